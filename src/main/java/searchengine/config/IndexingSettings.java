@@ -0,0 +1,65 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "indexing-settings")
+public class IndexingSettings {
+    /**
+     * Леммы и индексы страницы пишутся пакетно (upsert лемм и один batch insert индексов)
+     * вместо отдельных запросов на каждую лемму.
+     */
+    private boolean batchWrites = true;
+    /**
+     * Ожидаемое число ссылок сайта, при котором посещённые страницы учитываются фильтром Блума.
+     * 0 — точное множество отпечатков путей. Фильтр Блума теряет страницы: с вероятностью
+     * visited-bloom-filter-fpp новая ссылка принимается за посещённую и не обходится.
+     */
+    private long visitedBloomFilterSize = 0;
+    private double visitedBloomFilterFpp = 0.001;
+    private long defaultDelay = 100;
+    private int defaultConcurrency = 2;
+    /**
+     * Реализация скачивания страниц: jsoup или http-client (пул соединений, HTTP/2, gzip, асинхронные запросы).
+     */
+    private String fetcher = "jsoup";
+    private int maxDepth = 5;
+    /**
+     * false — ссылки с параметрами (?...) не обходятся, true — параметры отбрасываются.
+     */
+    private boolean stripQueryParams = false;
+    /**
+     * Размеры стадий конвейера обхода. lemmatize-threads = 0 — по числу ядер.
+     */
+    private int fetchConcurrency = 16;
+    private int parseThreads = 2;
+    private int lemmatizeThreads = 0;
+    private int persistThreads = 4;
+    /**
+     * Сколько страниц одновременно может находиться в конвейере одного сайта.
+     */
+    private int queueCapacity = 64;
+    /**
+     * Сколько словоформ хранит кэш морфологического разбора лемматизатора.
+     */
+    private int lemmaCacheSize = 200_000;
+    /**
+     * Записывать позиции лемм в тексте страницы, чтобы сниппеты строились без повторной лемматизации.
+     */
+    private boolean recordPositions = true;
+    /**
+     * Где хранятся списки страниц лемм между запусками: database — только таблица index,
+     * segments — ещё и сжатые файлы сайтов в segment-directory, из которых индекс загружается при старте.
+     */
+    private String postingStore = "database";
+    private String segmentDirectory = "data/segments";
+    /**
+     * Уровень сжатия HTML страниц Deflater: 1 — быстрее, 9 — плотнее.
+     */
+    private int contentCompressionLevel = 1;
+}
@@ -0,0 +1,47 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "search-settings")
+public class SearchSettings {
+    /**
+     * Сколько запросов хранит кэш результатов поиска; 0 — кэш отключён.
+     * При переполнении вытесняются давно не запрашивавшиеся.
+     */
+    private int resultCacheSize = 1000;
+    /**
+     * Время жизни результата в кэше; 0 — без ограничения, пока не изменится индекс сайта.
+     */
+    private long resultCacheTtlSeconds = 600;
+    /**
+     * Сколько потоков строят сниппеты страниц выдачи; 0 — в потоке запроса.
+     */
+    private int snippetThreads = 4;
+    /**
+     * Сколько сайтов ищется одновременно при поиске по всем сайтам; 0 — последовательно в потоке запроса.
+     */
+    private int siteSearchThreads = 4;
+    /**
+     * Модель релевантности по умолчанию: bm25 или rank (сумма вхождений лемм).
+     * Запрос может выбрать другую параметром ranking.
+     */
+    private String ranking = "bm25";
+    private float bm25K1 = 1.2f;
+    private float bm25B = 0.75f;
+    /**
+     * Леммы, встречающиеся более чем на этом проценте страниц сайта, не обязательны для совпадения
+     * и только добавляют вклад в релевантность; 0 или 100 — все леммы запроса обязательны.
+     */
+    private int commonLemmaPercent = 80;
+    /**
+     * Насколько повышается релевантность страницы, на которой леммы запроса стоят рядом:
+     * оценка умножается на 1 + proximityWeight * близость (от 0 до 1); 0 — без учёта близости.
+     */
+    private float proximityWeight = 0.5f;
+}
@@ -8,4 +8,12 @@ import lombok.Setter;
 public class Site {
     private String url;
     private String name;
+    /**
+     * Минимальный интервал между запросами к сайту, мс. Если не задан — indexing-settings.default-delay.
+     */
+    private Long delay;
+    /**
+     * Максимальное число одновременных запросов к сайту. Если не задано — indexing-settings.default-concurrency.
+     */
+    private Integer concurrency;
 }
@@ -37,19 +37,22 @@ public class ApiController {
                                          @RequestParam(name = "offset", required = false, defaultValue = "0")
                                          int offset,
                                          @RequestParam(name = "limit", required = false, defaultValue = "20")
-                                         int limit) {
+                                         int limit,
+                                         @RequestParam(name = "ranking", required = false, defaultValue = "")
+                                         String ranking) {
         if (limit < 20) {
             limit = 20;
         }
-        return searchService.searchByQueryAndUrlWithPagination(query, site, offset, limit);
+        return searchService.searchByQueryAndUrlWithPagination(query, site, offset, limit, ranking);
     }
 
     @GetMapping("/startIndexing")
-    public ResponseEntity<?> startIndexing() {
+    public ResponseEntity<?> startIndexing(@RequestParam(name = "incremental", required = false,
+            defaultValue = "false") boolean incremental) {
         if (indexingService.isIndexing()) {
             throw new IndexingHasAlreadyStartedException("Индексация уже запущена");
         }
-        indexingService.startIndexing();
+        indexingService.startIndexing(incremental);
         return ResponseEntity.ok().body(new ResponseDto(true));
     }
 
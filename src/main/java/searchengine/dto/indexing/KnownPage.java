@@ -0,0 +1,16 @@
+package searchengine.dto.indexing;
+
+import searchengine.services.helper.PageValidators;
+
+/**
+ * Страница, сохранённая прошлым обходом: по ней повторный обход отправляет условный запрос
+ * и сравнивает hash нового тела страницы с сохранённым. contentId и bodyHash равны null
+ * у страниц, сохранённых до хранения тел отдельно.
+ */
+public record KnownPage(Integer id, String path, String etag, String lastModified, Integer contentId,
+                        byte[] bodyHash) {
+
+    public PageValidators validators() {
+        return new PageValidators(etag, lastModified);
+    }
+}
@@ -0,0 +1,14 @@
+package searchengine.dto.search;
+
+/**
+ * Данные страницы, нужные выдаче. content заполняется только для страниц,
+ * проиндексированных до сохранения текста, — для них заголовок и текст извлекаются из HTML.
+ */
+public record PageView(Integer id, String path, String title, String headings, String plainText,
+                       Integer siteId, String siteUrl, String siteName, String content) {
+
+    public PageView(Integer id, String path, String title, String headings, String plainText,
+                    Integer siteId, String siteUrl, String siteName) {
+        this(id, path, title, headings, plainText, siteId, siteUrl, siteName, null);
+    }
+}
@@ -0,0 +1,7 @@
+package searchengine.dto.statistics;
+
+/**
+ * Число строк одного сайта, посчитанное запросом с GROUP BY site_id.
+ */
+public record SiteCount(Integer siteId, Long count) {
+}
@@ -0,0 +1,13 @@
+package searchengine.dto.statistics;
+
+import searchengine.model.IndexationStatuses;
+
+import java.time.LocalDateTime;
+
+/**
+ * Метаданные сайта без коллекций страниц и лемм: статистика и служебные проверки
+ * читают только строку таблицы site.
+ */
+public record SiteSummary(Integer id, String url, String name, IndexationStatuses status,
+                          LocalDateTime statusTime, String lastError) {
+}
@@ -17,7 +17,8 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
         return new ResponseEntity<>(new IndexingError(false, e.getMessage()), HttpStatus.CONFLICT);
     }
 
-    @ExceptionHandler({SiteUrlNotAllowedException.class, EmptyQueryException.class, SearchDataNotFoundException.class})
+    @ExceptionHandler({SiteUrlNotAllowedException.class, EmptyQueryException.class, SearchDataNotFoundException.class,
+            UnknownRankingException.class})
     public ResponseEntity<IndexingError> handleException(RuntimeException e) {
         log.error("Application specific error handling", e);
         return new ResponseEntity<>(new IndexingError(false, e.getMessage()), HttpStatus.BAD_REQUEST);
@@ -0,0 +1,7 @@
+package searchengine.exceptions;
+
+public class UnknownRankingException extends RuntimeException {
+    public UnknownRankingException(String message) {
+        super(message);
+    }
+}
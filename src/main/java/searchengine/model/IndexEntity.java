@@ -7,7 +7,7 @@ import lombok.Setter;
 @Setter
 @Getter
 @Entity
-@Table(name = "`index`")
+@Table(name = "`index`", uniqueConstraints = {@UniqueConstraint(columnNames = {"page_id", "lemma_id"}, name = "page_lemma")})
 public class IndexEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -21,4 +21,6 @@ public class IndexEntity {
     private LemmaEntity lemmaId;
     @Column(name = "`rank`", columnDefinition = "FLOAT", nullable = false)
     private Float rank;
+    @Column(name = "positions", columnDefinition = "MEDIUMBLOB")
+    private byte[] positions;
 }
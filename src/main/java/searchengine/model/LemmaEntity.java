@@ -12,7 +12,7 @@ import java.util.List;
 @Setter
 @Entity
 @ToString
-@Table(name = "lemma")
+@Table(name = "lemma", uniqueConstraints = {@UniqueConstraint(columnNames = {"site_id", "lemma"}, name = "site_lemma")})
 public class LemmaEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -0,0 +1,26 @@
+package searchengine.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * HTML страницы, сжатый Deflater. Одинаковые тела страниц (страницы ошибок, зеркальные пути)
+ * хранятся один раз: строка находится по SHA-256 исходных байт.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "page_content", uniqueConstraints = {@UniqueConstraint(columnNames = {"hash"}, name = "content_hash")})
+public class PageContentEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false)
+    private Integer id;
+    @Column(name = "hash", columnDefinition = "BINARY(32)", nullable = false)
+    private byte[] hash;
+    @Column(name = "raw_length", nullable = false)
+    private Integer rawLength;
+    @Column(name = "data", columnDefinition = "MEDIUMBLOB", nullable = false)
+    private byte[] data;
+}
@@ -26,8 +26,24 @@ public class PageEntity {
     private String path;
     @Column(name = "code", nullable = false)
     private Integer code;
-    @Column(name = "content", columnDefinition = "MEDIUMTEXT", nullable = false)
+    /**
+     * HTML страниц, сохранённых до перехода на {@link PageContentEntity}; у новых страниц null.
+     */
+    @Column(name = "content", columnDefinition = "MEDIUMTEXT")
     private String content;
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "content_id")
+    private PageContentEntity body;
+    @Column(name = "etag", columnDefinition = "VARCHAR(255)")
+    private String etag;
+    @Column(name = "last_modified", columnDefinition = "VARCHAR(64)")
+    private String lastModified;
+    @Column(name = "title", columnDefinition = "VARCHAR(1000)")
+    private String title;
+    @Column(name = "headings", columnDefinition = "TEXT")
+    private String headings;
+    @Column(name = "plain_text", columnDefinition = "MEDIUMTEXT")
+    private String plainText;
     @OneToMany(mappedBy = "pageId", fetch = FetchType.LAZY, cascade = CascadeType.REMOVE, orphanRemoval = true)
     private List<IndexEntity> indexEntityList = new ArrayList<>();
 }
@@ -30,8 +30,12 @@ public class SiteEntity {
     private String url;
     @Column(name = "name", columnDefinition = "VARCHAR(255)", nullable = false)
     private String name;
-    @OneToMany(mappedBy = "sites", cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    /**
+     * Коллекции не загружаются вместе с сайтом и не участвуют в merge при сохранении статуса:
+     * страницы и леммы пишутся и удаляются своими репозиториями.
+     */
+    @OneToMany(mappedBy = "sites", fetch = FetchType.LAZY)
     private List<PageEntity> pages = new ArrayList<>();
-    @OneToMany(mappedBy = "sites", cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    @OneToMany(mappedBy = "sites", fetch = FetchType.LAZY)
     List<LemmaEntity> lemmas = new ArrayList<>();
 }
@@ -0,0 +1,189 @@
+package searchengine.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import searchengine.services.search.PostingSegment.SegmentStamp;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.*;
+
+@Repository
+public class IndexBatchRepository {
+    private static final int SELECT_CHUNK_SIZE = 1000;
+    private static final String UPSERT_LEMMA = "INSERT INTO lemma (site_id, lemma, frequency) VALUES (?, ?, 1) " +
+            "ON DUPLICATE KEY UPDATE frequency = frequency + 1";
+    private static final String INSERT_LEMMA = "INSERT INTO lemma (site_id, lemma, frequency) VALUES (?, ?, 0) " +
+            "ON DUPLICATE KEY UPDATE frequency = frequency";
+    private static final String SELECT_SITE_LEMMA_IDS = "SELECT l.id, l.lemma FROM lemma l WHERE l.site_id = ?";
+    private static final String ADD_LEMMA_FREQUENCY = "UPDATE lemma SET frequency = frequency + ? WHERE id = ?";
+    private static final String SELECT_LEMMA_IDS = "SELECT l.id, l.lemma FROM lemma l " +
+            "WHERE l.site_id = :siteId AND l.lemma IN (:lemmas)";
+    private static final String UPSERT_INDEX = "INSERT INTO `index` (page_id, lemma_id, `rank`, positions) " +
+            "VALUES (?, ?, ?, ?) ON DUPLICATE KEY UPDATE `rank` = VALUES(`rank`), positions = VALUES(positions)";
+    private static final String SELECT_POSTINGS = "SELECT l.site_id, l.lemma, i.page_id, i.`rank` " +
+            "FROM `index` i JOIN lemma l ON l.id = i.lemma_id ORDER BY i.page_id";
+    private static final String SELECT_SITE_POSTINGS = "SELECT l.site_id, l.lemma, i.page_id, i.`rank` " +
+            "FROM `index` i JOIN lemma l ON l.id = i.lemma_id WHERE l.site_id = ? ORDER BY i.page_id";
+    private static final String SELECT_POSITIONS = "SELECT i.page_id, l.lemma, i.positions " +
+            "FROM `index` i JOIN lemma l ON l.id = i.lemma_id " +
+            "WHERE l.site_id = :siteId AND l.lemma IN (:lemmas) AND i.page_id IN (:pageIds) " +
+            "AND i.positions IS NOT NULL";
+    private static final String RELEASE_PAGE_LEMMAS = "UPDATE lemma SET frequency = frequency - 1 " +
+            "WHERE id IN (SELECT i.lemma_id FROM `index` i WHERE i.page_id = ?) ORDER BY id";
+    private static final String DELETE_PAGE_INDEXES = "DELETE FROM `index` WHERE page_id = ?";
+    private static final String SELECT_SEGMENT_STAMP = "SELECT COUNT(*), COALESCE(MAX(id), 0) FROM page WHERE site_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    public IndexBatchRepository(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate namedJdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = namedJdbcTemplate;
+    }
+
+    /**
+     * Создаёт недостающие леммы сайта и увеличивает frequency существующих одним пакетом.
+     * Леммы должны приходить отсортированными, чтобы параллельные потоки брали блокировки
+     * строк в одинаковом порядке и не получали deadlock.
+     */
+    public void upsertLemmas(int siteId, List<String> sortedLemmas) {
+        jdbcTemplate.batchUpdate(UPSERT_LEMMA, sortedLemmas, sortedLemmas.size(), (ps, lemma) -> {
+            ps.setInt(1, siteId);
+            ps.setString(2, lemma);
+        });
+    }
+
+    /**
+     * Создаёт недостающие леммы сайта с frequency 0; существующие не меняются.
+     * Леммы должны приходить отсортированными, как и в {@link #upsertLemmas}.
+     */
+    public void insertLemmas(int siteId, List<String> sortedLemmas) {
+        jdbcTemplate.batchUpdate(INSERT_LEMMA, sortedLemmas, sortedLemmas.size(), (ps, lemma) -> {
+            ps.setInt(1, siteId);
+            ps.setString(2, lemma);
+        });
+    }
+
+    /**
+     * Увеличивает frequency лемм одним пакетом; приращения должны быть отсортированы по id леммы.
+     */
+    public void addLemmaFrequencies(List<FrequencyDelta> sortedDeltas) {
+        jdbcTemplate.batchUpdate(ADD_LEMMA_FREQUENCY, sortedDeltas, sortedDeltas.size(), (ps, delta) -> {
+            ps.setInt(1, delta.delta());
+            ps.setInt(2, delta.lemmaId());
+        });
+    }
+
+    public Map<String, Integer> findLemmaIds(int siteId) {
+        Map<String, Integer> lemmaIds = new HashMap<>();
+        jdbcTemplate.query(SELECT_SITE_LEMMA_IDS, rs -> {
+            lemmaIds.put(rs.getString(2), rs.getInt(1));
+        }, siteId);
+        return lemmaIds;
+    }
+
+    public Map<String, Integer> findLemmaIds(int siteId, List<String> lemmas) {
+        Map<String, Integer> lemmaIds = new HashMap<>(lemmas.size() * 2);
+        for (int from = 0; from < lemmas.size(); from += SELECT_CHUNK_SIZE) {
+            List<String> chunk = lemmas.subList(from, Math.min(from + SELECT_CHUNK_SIZE, lemmas.size()));
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("siteId", siteId)
+                    .addValue("lemmas", chunk);
+            namedJdbcTemplate.query(SELECT_LEMMA_IDS, params,
+                    rs -> {
+                        lemmaIds.put(rs.getString("lemma"), rs.getInt("id"));
+                    });
+        }
+        return lemmaIds;
+    }
+
+    public void upsertIndexes(int pageId, List<IndexRow> rows) {
+        jdbcTemplate.batchUpdate(UPSERT_INDEX, rows, rows.size(), (ps, row) -> {
+            ps.setInt(1, pageId);
+            ps.setInt(2, row.lemmaId());
+            ps.setFloat(3, row.rank());
+            ps.setBytes(4, row.positions());
+        });
+    }
+
+    /**
+     * Удаляет индексы страницы и уменьшает frequency её лемм; леммы с нулевой frequency остаются
+     * до {@link searchengine.repository.LemmaRepository#deleteUnusedBySiteId}. Леммы обновляются
+     * в порядке id, как и в {@link #upsertLemmas}, чтобы не получать deadlock с параллельным сохранением.
+     */
+    public void deletePageIndexes(int pageId) {
+        jdbcTemplate.update(RELEASE_PAGE_LEMMAS, pageId);
+        jdbcTemplate.update(DELETE_PAGE_INDEXES, pageId);
+    }
+
+    /**
+     * Построчно читает все пары (лемма, страница) из таблицы index, не загружая их в память целиком.
+     */
+    public void forEachPosting(PostingHandler handler) {
+        streamPostings(SELECT_POSTINGS, null, handler);
+    }
+
+    public void forEachPosting(int siteId, PostingHandler handler) {
+        streamPostings(SELECT_SITE_POSTINGS, siteId, handler);
+    }
+
+    /**
+     * Позиции лемм сайта на страницах: для каждой страницы — леммы, записанные с позициями.
+     * Страницы запрашиваются порциями по SELECT_CHUNK_SIZE.
+     */
+    public Map<Integer, Map<String, byte[]>> findPositions(int siteId, Collection<String> lemmas,
+                                                           List<Integer> pageIds) {
+        Map<Integer, Map<String, byte[]>> positions = new HashMap<>(pageIds.size() * 2);
+        if (lemmas.isEmpty()) {
+            return positions;
+        }
+        for (int from = 0; from < pageIds.size(); from += SELECT_CHUNK_SIZE) {
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("siteId", siteId)
+                    .addValue("lemmas", lemmas)
+                    .addValue("pageIds", pageIds.subList(from, Math.min(from + SELECT_CHUNK_SIZE, pageIds.size())));
+            namedJdbcTemplate.query(SELECT_POSITIONS, params, rs -> {
+                positions.computeIfAbsent(rs.getInt(1), pageId -> new HashMap<>())
+                        .put(rs.getString(2), rs.getBytes(3));
+            });
+        }
+        return positions;
+    }
+
+    /**
+     * Число страниц сайта и наибольший id страницы: по ним проверяется, что файл списков страниц сайта
+     * записан после последнего изменения его страниц.
+     */
+    public SegmentStamp findSegmentStamp(int siteId) {
+        return jdbcTemplate.queryForObject(SELECT_SEGMENT_STAMP,
+                (rs, rowNum) -> new SegmentStamp(rs.getLong(1), rs.getInt(2)), siteId);
+    }
+
+    private void streamPostings(String sql, Integer siteId, PostingHandler handler) {
+        RowCallbackHandler rowHandler = rs ->
+                handler.onPosting(rs.getInt(1), rs.getString(2), rs.getInt(3), rs.getFloat(4));
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(Integer.MIN_VALUE);
+            if (siteId != null) {
+                statement.setInt(1, siteId);
+            }
+            return statement;
+        }, rowHandler);
+    }
+
+    public record IndexRow(int lemmaId, float rank, byte[] positions) {
+    }
+
+    public record FrequencyDelta(int lemmaId, int delta) {
+    }
+
+    public interface PostingHandler {
+        void onPosting(int siteId, String lemma, int pageId, float rank);
+    }
+}
@@ -1,9 +1,11 @@
 package searchengine.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import searchengine.model.IndexEntity;
 import searchengine.model.LemmaEntity;
 import searchengine.model.PageEntity;
@@ -18,9 +20,10 @@ public interface IndexRepository extends JpaRepository<IndexEntity, Integer> {
 
     IndexEntity findByLemmaIdAndPageId(LemmaEntity lemmaId, PageEntity pageId);
 
-    @Query(value = "SELECT i.* FROM `index` i WHERE i.lemma_id IN :lemmas AND i.page_id IN :pages",
-            nativeQuery = true)
-    List<IndexEntity> findByLemmasAndPages(@Param("lemmas") List<Integer> lemmaId,
-                                           @Param("pages") List<Integer> pagesId);
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM `index` WHERE page_id IN (SELECT p.id FROM page p WHERE p.site_id = :siteId) " +
+            "LIMIT :limit", nativeQuery = true)
+    int deleteBySiteId(@Param("siteId") Integer siteId, @Param("limit") int limit);
 
 }
@@ -1,21 +1,35 @@
 package searchengine.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.dto.statistics.SiteCount;
 import searchengine.model.LemmaEntity;
 
 import java.util.List;
 
 @Repository
 public interface LemmaRepository extends JpaRepository<LemmaEntity, Integer> {
-    LemmaEntity findByLemmaIgnoreCaseAndSitesId(String lemma, Integer id);
+    LemmaEntity findByLemmaAndSitesId(String lemma, Integer id);
 
     List<LemmaEntity> findBySitesId(Integer id);
 
     int countBySites_Id(Integer siteId);
 
-    @Query(value = "SELECT l.* FROM lemma l WHERE l.lemma IN :lemmas AND l.site_id = :siteId", nativeQuery = true)
-    List<LemmaEntity> findLemmasBySite(@Param("lemmas") List<String> lemmas, @Param("siteId") Integer siteId);
+    @Query("SELECT new searchengine.dto.statistics.SiteCount(l.sites.id, COUNT(l)) FROM LemmaEntity l " +
+            "GROUP BY l.sites.id")
+    List<SiteCount> countPerSite();
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM lemma WHERE site_id = :siteId LIMIT :limit", nativeQuery = true)
+    int deleteBySiteId(@Param("siteId") Integer siteId, @Param("limit") int limit);
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM lemma WHERE site_id = :siteId AND frequency <= 0 LIMIT :limit", nativeQuery = true)
+    int deleteUnusedBySiteId(@Param("siteId") Integer siteId, @Param("limit") int limit);
 }
@@ -0,0 +1,30 @@
+package searchengine.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.model.PageContentEntity;
+
+@Repository
+public interface PageContentRepository extends JpaRepository<PageContentEntity, Integer> {
+    @Query("SELECT c.id FROM PageContentEntity c WHERE c.hash = :hash")
+    Integer findIdByHash(@Param("hash") byte[] hash);
+
+    /**
+     * Вставляет тело страницы, если тела с таким hash ещё нет; возвращает 0, если оно уже было.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO page_content (hash, raw_length, data) VALUES (:hash, :rawLength, :data) " +
+            "ON DUPLICATE KEY UPDATE id = id", nativeQuery = true)
+    int insertIfAbsent(@Param("hash") byte[] hash, @Param("rawLength") int rawLength, @Param("data") byte[] data);
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM page_content WHERE NOT EXISTS " +
+            "(SELECT 1 FROM page p WHERE p.content_id = page_content.id) LIMIT :limit", nativeQuery = true)
+    int deleteUnreferenced(@Param("limit") int limit);
+}
@@ -1,11 +1,17 @@
 package searchengine.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.dto.indexing.KnownPage;
+import searchengine.dto.search.PageView;
+import searchengine.dto.statistics.SiteCount;
 import searchengine.model.PageEntity;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -16,19 +22,30 @@ public interface PageRepository extends JpaRepository<PageEntity, Integer> {
 
     int countBySites_id(Integer siteId);
 
+    @Query("SELECT new searchengine.dto.statistics.SiteCount(p.sites.id, COUNT(p)) FROM PageEntity p " +
+            "GROUP BY p.sites.id")
+    List<SiteCount> countPerSite();
+
     List<PageEntity> findBySites_Id(Integer siteId);
 
-    @Query(value = "SELECT page.id, page.site_id, path, code, content " +
-            "FROM page " +
-            "WHERE page.id IN (" +
-            "  SELECT i.page_id " +
-            "  FROM `index` i " +
-            "  JOIN lemma l on l.id = i.lemma_id " +
-            "  WHERE l.id IN :lemmas " +
-            "  GROUP BY i.page_id " +
-            "  HAVING COUNT(DISTINCT i.lemma_id) = :lemmaCount)", nativeQuery = true)
-    List<PageEntity> findByLemmas(@Param("lemmas") List<Integer> lemmas, @Param("lemmaCount") int lemmaCount);
+    @Query("SELECT new searchengine.dto.search.PageView(p.id, p.path, p.title, p.headings, p.plainText, " +
+            "s.id, s.url, s.name) FROM PageEntity p JOIN p.sites s WHERE p.id IN :ids")
+    List<PageView> findViewsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    @Query("SELECT new searchengine.dto.indexing.KnownPage(p.id, p.path, p.etag, p.lastModified, c.id, c.hash) " +
+            "FROM PageEntity p LEFT JOIN p.body c WHERE p.sites.id = :siteId")
+    List<KnownPage> findKnownPages(@Param("siteId") Integer siteId);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE PageEntity p SET p.etag = :etag, p.lastModified = :lastModified WHERE p.id = :id")
+    int updateValidators(@Param("id") Integer id, @Param("etag") String etag,
+                         @Param("lastModified") String lastModified);
 
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM page WHERE site_id = :siteId LIMIT :limit", nativeQuery = true)
+    int deleteBySiteId(@Param("siteId") Integer siteId, @Param("limit") int limit);
 
 
 }
@@ -0,0 +1,107 @@
+package searchengine.repository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.stereotype.Component;
+
+/**
+ * Приводит схему базы, созданной прошлыми версиями, к сущностям до того, как Hibernate её проверит
+ * (ddl-auto: validate): EntityManagerFactory создаётся только после {@link #upgrade()}. Каждый шаг
+ * идемпотентен — выполняется, лишь если по information_schema недостающего столбца или ключа нет.
+ * В пустой базе шаги пропускаются: таблицы создаёт Hibernate.
+ * <p>
+ * Уникальные ключи lemma(site_id, lemma) и index(page_id, lemma_id) нужны пакетным upsert-ам
+ * {@link IndexBatchRepository}. Аннотации {@code @UniqueConstraint} их в существующей схеме не создают,
+ * поэтому недостающий ключ добавляется скриптом из db/, который сначала убирает накопившиеся повторы.
+ */
+@Slf4j
+@Component
+public class SchemaUpgrade {
+    private static final String COUNT_TABLES = "SELECT COUNT(*) FROM information_schema.tables " +
+            "WHERE table_schema = DATABASE() AND table_name = ?";
+    private static final String COUNT_COLUMNS = "SELECT COUNT(*) FROM information_schema.columns " +
+            "WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ?";
+    private static final String COUNT_NOT_NULL_COLUMNS = "SELECT COUNT(*) FROM information_schema.columns " +
+            "WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ? AND is_nullable = 'NO'";
+    private static final String COUNT_KEYS = "SELECT COUNT(*) FROM information_schema.statistics " +
+            "WHERE table_schema = DATABASE() AND table_name = ? AND index_name = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SchemaUpgrade(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void upgrade() {
+        if (count(COUNT_TABLES, "page") == 0) {
+            return;
+        }
+        addColumn("index", "positions", "ADD COLUMN positions MEDIUMBLOB NULL");
+        addColumn("page", "title", "ADD COLUMN title VARCHAR(1000) NULL");
+        addColumn("page", "headings", "ADD COLUMN headings TEXT NULL");
+        addColumn("page", "plain_text", "ADD COLUMN plain_text MEDIUMTEXT NULL");
+        if (count(COUNT_TABLES, "page_content") == 0) {
+            log.info("Creating table page_content");
+            executeScript("db/page-content-table.sql");
+        }
+        addColumn("page", "content_id", "ADD COLUMN content_id INT NULL, " +
+                "ADD CONSTRAINT page_content_id FOREIGN KEY (content_id) REFERENCES page_content (id)");
+        addColumn("page", "etag", "ADD COLUMN etag VARCHAR(255) NULL");
+        addColumn("page", "last_modified", "ADD COLUMN last_modified VARCHAR(64) NULL");
+        if (count(COUNT_NOT_NULL_COLUMNS, "page", "content") > 0) {
+            log.info("Allowing NULL in column content of table page");
+            jdbcTemplate.execute("ALTER TABLE page MODIFY content MEDIUMTEXT NULL");
+        }
+        addUniqueKey("lemma", "site_lemma", "db/lemma-unique-key.sql");
+        addUniqueKey("index", "page_lemma", "db/index-unique-key.sql");
+    }
+
+    /**
+     * @param alteration изменения ALTER TABLE, выполняемые одним запросом, если столбца column нет
+     */
+    private void addColumn(String table, String column, String alteration) {
+        if (count(COUNT_COLUMNS, table, column) > 0) {
+            return;
+        }
+        log.info("Adding column {} to table {}", column, table);
+        jdbcTemplate.execute("ALTER TABLE `" + table + "` " + alteration);
+    }
+
+    private void addUniqueKey(String table, String key, String script) {
+        if (count(COUNT_KEYS, table, key) > 0) {
+            return;
+        }
+        log.info("Adding unique key {} to table {}", key, table);
+        long startTime = System.currentTimeMillis();
+        executeScript(script);
+        log.info("Unique key {} added to table {} ({} ms)", key, table, System.currentTimeMillis() - startTime);
+    }
+
+    private void executeScript(String script) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            ScriptUtils.executeSqlScript(connection, new ClassPathResource(script));
+            return null;
+        });
+    }
+
+    private int count(String query, Object... args) {
+        Integer count = jdbcTemplate.queryForObject(query, Integer.class, args);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Делает EntityManagerFactory зависимым от {@link SchemaUpgrade}, чтобы проверка схемы шла после обновления.
+     */
+    @Component
+    static class EntityManagerFactoryDependsOnSchemaUpgrade extends EntityManagerFactoryDependsOnPostProcessor {
+        EntityManagerFactoryDependsOnSchemaUpgrade() {
+            super(SchemaUpgrade.class);
+        }
+    }
+}
@@ -1,12 +1,40 @@
 package searchengine.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.repository.query.QueryByExampleExecutor;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.dto.statistics.SiteSummary;
+import searchengine.model.IndexationStatuses;
 import searchengine.model.SiteEntity;
 
+import java.util.List;
+
 
 @Repository
 public interface SiteRepository extends JpaRepository<SiteEntity, Integer>, QueryByExampleExecutor<SiteEntity> {
     SiteEntity findByUrl(String url);
+
+    @Query("SELECT s.id FROM SiteEntity s WHERE s.url = :url")
+    Integer findIdByUrl(@Param("url") String url);
+
+    @Query("SELECT s.id FROM SiteEntity s")
+    List<Integer> findAllIds();
+
+    @Query("SELECT new searchengine.dto.statistics.SiteSummary(s.id, s.url, s.name, s.status, s.statusTime, " +
+            "s.lastError) FROM SiteEntity s ORDER BY s.id")
+    List<SiteSummary> findSummaries();
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE SiteEntity s SET s.status = :status, s.lastError = :lastError")
+    int updateAllStatuses(@Param("status") IndexationStatuses status, @Param("lastError") String lastError);
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM site WHERE id = :siteId", nativeQuery = true)
+    int deleteSiteById(@Param("siteId") Integer siteId);
 }
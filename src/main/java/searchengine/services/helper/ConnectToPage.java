@@ -1,25 +1,31 @@
 package searchengine.services.helper;
 
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.springframework.stereotype.Component;
+import searchengine.config.IndexingSettings;
+
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 @Component
 public class ConnectToPage {
-    public Connection connectToPage(String url) throws IOException, InterruptedException {
-        Thread.sleep(100);
-        Connection connection = Jsoup.connect(url).userAgent("Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6")
-                .timeout(10000)
-                .ignoreHttpErrors(false)
-                .ignoreContentType(true)
-                .followRedirects(true)
-                .referrer("http://www.google.com");
-
-        return connection;
+    private final PolitenessScheduler politenessScheduler;
+    private final PageFetcher pageFetcher;
+
+    public ConnectToPage(PolitenessScheduler politenessScheduler, List<PageFetcher> pageFetchers,
+                         IndexingSettings indexingSettings) {
+        this.politenessScheduler = politenessScheduler;
+        this.pageFetcher = pageFetchers.stream()
+                .filter(fetcher -> fetcher.getName().equals(indexingSettings.getFetcher()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Unknown page fetcher: " + indexingSettings.getFetcher()));
+        log.info("Page fetcher: {}", pageFetcher.getName());
     }
 
     public String getTitleFromHtml(String content) {
@@ -27,8 +33,39 @@ public class ConnectToPage {
         return doc.title();
     }
 
-    public Document getDocumentPage(String url) throws IOException, InterruptedException {
-        Connection connection = connectToPage(url);
-        return connection.get();
+    /**
+     * Ставит запрос в очередь хоста; страница скачивается, когда это позволяет
+     * ограничение частоты запросов к сайту.
+     */
+    public CompletableFuture<FetchedPage> fetchPageAsync(String url) {
+        return fetchPageAsync(url, PageValidators.NONE);
+    }
+
+    /**
+     * Условный запрос: если страница не изменилась, future завершается {@link FetchedPage#notModified}.
+     */
+    public CompletableFuture<FetchedPage> fetchPageAsync(String url, PageValidators validators) {
+        return politenessScheduler.scheduleAsync(url, () -> pageFetcher.fetch(url, validators));
+    }
+
+    public FetchedPage fetchPage(String url) throws IOException, InterruptedException {
+        return awaitPage(fetchPageAsync(url));
+    }
+
+    public FetchedPage awaitPage(CompletableFuture<FetchedPage> fetch) throws IOException, InterruptedException {
+        try {
+            return fetch.join();
+        } catch (CancellationException e) {
+            throw new InterruptedException("Page request cancelled");
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (cause instanceof InterruptedException interruptedException) {
+                throw interruptedException;
+            }
+            throw e;
+        }
     }
 }
@@ -0,0 +1,446 @@
+package searchengine.services.helper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import searchengine.config.IndexingSettings;
+import searchengine.dto.indexing.KnownPage;
+import searchengine.model.PageEntity;
+import searchengine.model.SiteEntity;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Обход одного сайта конвейером «скачивание → разбор → лемматизация → сохранение».
+ * У каждой стадии свой пул потоков и ограниченная очередь: скачивание ограничено числом
+ * соединений, лемматизация — числом ядер, сохранение — числом соединений с БД.
+ * Страница занимает одно из queue-capacity мест конвейера от начала скачивания до сохранения,
+ * поэтому очереди не переполняются, а при медленных стадиях новые страницы просто не скачиваются.
+ * <p>
+ * При повторном обходе (непустой knownPages) страницы прошлого обхода запрашиваются условно.
+ * Ответ 304 или тело с прежним hash не лемматизируются и не сохраняются: из них берутся только ссылки
+ * (при 304 — из сохранённого HTML). Изменившиеся страницы заменяются под прежним id.
+ * Страницы прошлого обхода, до которых обход не дошёл, возвращает {@link #getUnvisitedPages()}.
+ * Их пути захватываются по точному множеству, а не через visitedUrls: ложное срабатывание
+ * фильтра Блума не должно выдать живую страницу за удалённую.
+ */
+@Slf4j
+public class CrawlPipeline {
+    private static final long STATUS_UPDATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final SiteEntity siteEntity;
+    private final VisitedUrlSet visitedUrls;
+    private final SiteUrlFilter urlFilter;
+    private final int maxDepth;
+    private final boolean recordPositions;
+    private final AtomicBoolean stopIndexingFlag;
+    private final EntityFactory entityFactory;
+    private final ConnectToPage connectToPage;
+    private final Lemmatizer lemmatizer;
+    private final LemmaDictionary lemmaDictionary;
+    private final Map<String, KnownPage> unvisitedPages;
+    private final Set<String> knownPaths;
+    private final Set<String> claimedKnownPaths = ConcurrentHashMap.newKeySet();
+
+    private final Queue<CrawlTask> frontier = new ConcurrentLinkedQueue<>();
+    private final Semaphore pipelineSlots;
+    private final AtomicInteger fetchesInFlight = new AtomicInteger();
+    private final int fetchConcurrency;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private final Set<CompletableFuture<FetchedPage>> activeFetches = ConcurrentHashMap.newKeySet();
+    private final AtomicLong lastStatusUpdate = new AtomicLong(System.nanoTime());
+    private final ThreadPoolExecutor parseExecutor;
+    private final ThreadPoolExecutor lemmatizeExecutor;
+    private final ThreadPoolExecutor persistExecutor;
+    private final Counter fetchedCounter;
+    private final Counter parsedCounter;
+    private final Counter lemmatizedCounter;
+    private final Counter persistedCounter;
+    private final Counter failedCounter;
+    private final Counter unchangedCounter;
+    private final MeterRegistry meterRegistry;
+    private final List<Gauge> queueGauges;
+    private volatile String rootError;
+
+    public CrawlPipeline(SiteEntity siteEntity, VisitedUrlSet visitedUrls, AtomicBoolean stopIndexingFlag,
+                         EntityFactory entityFactory, ConnectToPage connectToPage, Lemmatizer lemmatizer,
+                         IndexingSettings settings, MeterRegistry meterRegistry) {
+        this(siteEntity, visitedUrls, stopIndexingFlag, entityFactory, connectToPage, lemmatizer, settings,
+                meterRegistry, Map.of());
+    }
+
+    public CrawlPipeline(SiteEntity siteEntity, VisitedUrlSet visitedUrls, AtomicBoolean stopIndexingFlag,
+                         EntityFactory entityFactory, ConnectToPage connectToPage, Lemmatizer lemmatizer,
+                         IndexingSettings settings, MeterRegistry meterRegistry, Map<String, KnownPage> knownPages) {
+        this.siteEntity = siteEntity;
+        this.visitedUrls = visitedUrls;
+        this.urlFilter = new SiteUrlFilter(siteEntity.getUrl(), settings.isStripQueryParams());
+        this.maxDepth = settings.getMaxDepth();
+        this.recordPositions = settings.isRecordPositions();
+        this.stopIndexingFlag = stopIndexingFlag;
+        this.entityFactory = entityFactory;
+        this.connectToPage = connectToPage;
+        this.lemmatizer = lemmatizer;
+        this.lemmaDictionary = entityFactory.createLemmaDictionary(siteEntity);
+        this.unvisitedPages = new ConcurrentHashMap<>(knownPages);
+        this.knownPaths = Set.copyOf(knownPages.keySet());
+
+        int capacity = Math.max(1, settings.getQueueCapacity());
+        int lemmatizeThreads = settings.getLemmatizeThreads() > 0
+                ? settings.getLemmatizeThreads() : Runtime.getRuntime().availableProcessors();
+        this.pipelineSlots = new Semaphore(capacity);
+        this.fetchConcurrency = Math.max(1, settings.getFetchConcurrency());
+        this.parseExecutor = createStageExecutor("parse", settings.getParseThreads(), capacity);
+        this.lemmatizeExecutor = createStageExecutor("lemmatize", lemmatizeThreads, capacity);
+        this.persistExecutor = createStageExecutor("persist", settings.getPersistThreads(), capacity);
+
+        String site = siteEntity.getName();
+        this.fetchedCounter = stageCounter(meterRegistry, site, "fetch");
+        this.parsedCounter = stageCounter(meterRegistry, site, "parse");
+        this.lemmatizedCounter = stageCounter(meterRegistry, site, "lemmatize");
+        this.persistedCounter = stageCounter(meterRegistry, site, "persist");
+        this.failedCounter = Counter.builder("crawler.pages.failed").tag("site", site).register(meterRegistry);
+        this.unchangedCounter = Counter.builder("crawler.pages.unchanged").tag("site", site).register(meterRegistry);
+        this.meterRegistry = meterRegistry;
+        this.queueGauges = List.of(
+                stageQueueGauge(meterRegistry, site, "fetch", frontier),
+                stageQueueGauge(meterRegistry, site, "parse", parseExecutor.getQueue()),
+                stageQueueGauge(meterRegistry, site, "lemmatize", lemmatizeExecutor.getQueue()),
+                stageQueueGauge(meterRegistry, site, "persist", persistExecutor.getQueue()));
+        completion.whenComplete((ignored, error) -> removeQueueGauges());
+    }
+
+    public CompletableFuture<Void> start() {
+        String rootPath = "";
+        claim(rootPath);
+        enqueue(new CrawlTask(urlFilter.toUrl(rootPath), rootPath, 0));
+        return completion;
+    }
+
+    public void stop() {
+        frontier.clear();
+        activeFetches.forEach(fetch -> fetch.cancel(false));
+        parseExecutor.shutdownNow();
+        lemmatizeExecutor.shutdownNow();
+        persistExecutor.shutdownNow();
+        completion.complete(null);
+    }
+
+    public void awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ThreadPoolExecutor executor : List.of(parseExecutor, lemmatizeExecutor, persistExecutor)) {
+            executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void shutdown() {
+        parseExecutor.shutdown();
+        lemmatizeExecutor.shutdown();
+        persistExecutor.shutdown();
+    }
+
+    /**
+     * Дожидается сохранения страниц, уже попавших в стадию сохранения, и записывает накопленные
+     * frequency лемм. Вызывается после {@link #shutdown()}.
+     */
+    public void flushLemmaFrequencies() {
+        try {
+            persistExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lemmaDictionary.flush();
+    }
+
+    /**
+     * Ошибка скачивания главной страницы сайта, если она произошла.
+     */
+    public String getRootError() {
+        return rootError;
+    }
+
+    /**
+     * Страницы прошлого обхода, ссылок на которые этот обход не нашёл. Имеет смысл после завершения обхода.
+     */
+    public Collection<KnownPage> getUnvisitedPages() {
+        return unvisitedPages.values();
+    }
+
+    private boolean claim(String path) {
+        if (knownPaths.contains(path)) {
+            return claimedKnownPaths.add(path);
+        }
+        return visitedUrls.claim(path);
+    }
+
+    private void enqueue(CrawlTask task) {
+        task.knownPage = unvisitedPages.remove(task.path);
+        pending.incrementAndGet();
+        frontier.add(task);
+        dispatchFetches();
+    }
+
+    private void dispatchFetches() {
+        while (!stopIndexingFlag.get() && !frontier.isEmpty()) {
+            int inFlight = fetchesInFlight.get();
+            if (inFlight >= fetchConcurrency) {
+                return;
+            }
+            if (!fetchesInFlight.compareAndSet(inFlight, inFlight + 1)) {
+                continue;
+            }
+            if (!pipelineSlots.tryAcquire()) {
+                fetchesInFlight.decrementAndGet();
+                return;
+            }
+            CrawlTask task = frontier.poll();
+            if (task == null) {
+                fetchesInFlight.decrementAndGet();
+                pipelineSlots.release();
+                continue;
+            }
+            fetch(task);
+        }
+    }
+
+    private void fetch(CrawlTask task) {
+        log.info("Crawling page: {}", task.url);
+        CompletableFuture<FetchedPage> fetch = connectToPage.fetchPageAsync(task.url,
+                task.knownPage == null ? PageValidators.NONE : task.knownPage.validators());
+        activeFetches.add(fetch);
+        fetch.whenComplete((page, error) -> {
+            activeFetches.remove(fetch);
+            fetchesInFlight.decrementAndGet();
+            if (error != null) {
+                task.error = error instanceof CompletionException ? error.getCause() : error;
+            } else {
+                task.page = page;
+                fetchedCounter.increment();
+            }
+            handOff(parseExecutor, task, this::parse);
+            dispatchFetches();
+        });
+    }
+
+    private void parse(CrawlTask task) {
+        if (task.error != null) {
+            handOff(persistExecutor, task, this::persist);
+            return;
+        }
+        if (task.page.isNotModified()) {
+            enqueueLinks(task, Jsoup.parse(entityFactory.findPageHtml(task.knownPage), task.url));
+            skipUnchanged(task);
+            return;
+        }
+        enqueueLinks(task, task.page.getDocument());
+        task.content = task.page.getContent();
+        task.contentHash = PageContentStore.hash(task.content);
+        task.validators = task.page.getValidators();
+        if (task.knownPage != null && Arrays.equals(task.contentHash, task.knownPage.bodyHash())) {
+            task.page = null;
+            if (task.validators.equals(task.knownPage.validators())) {
+                skipUnchanged(task);
+            } else {
+                task.unchanged = true;
+                handOff(persistExecutor, task, this::persist);
+            }
+            return;
+        }
+        task.pageText = PageText.extract(task.page.getDocument());
+        task.statusCode = task.page.getStatusCode();
+        task.page = null;
+        parsedCounter.increment();
+        handOff(lemmatizeExecutor, task, this::lemmatize);
+    }
+
+    private void enqueueLinks(CrawlTask task, Document document) {
+        if (task.depth >= maxDepth) {
+            log.info("Maximum depth exceeded on page: {}", task.url);
+            return;
+        }
+        for (Element element : document.select("a[href], link[href]")) {
+            String path = urlFilter.toPath(element.attr("abs:href"));
+            if (path != null && claim(path)) {
+                enqueue(new CrawlTask(urlFilter.toUrl(path), path, task.depth + 1));
+            }
+        }
+    }
+
+    private void skipUnchanged(CrawlTask task) {
+        task.page = null;
+        unchangedCounter.increment();
+        finish();
+    }
+
+    private void lemmatize(CrawlTask task) {
+        task.pageLemmas = lemmatizer.analyzePage(task.pageText, recordPositions);
+        lemmatizedCounter.increment();
+        handOff(persistExecutor, task, this::persist);
+    }
+
+    private void persist(CrawlTask task) {
+        try {
+            if (task.error != null) {
+                saveError(task);
+                failedCounter.increment();
+                return;
+            }
+            if (task.unchanged) {
+                entityFactory.updatePageValidators(task.knownPage.id(), task.validators);
+                unchangedCounter.increment();
+                return;
+            }
+            PageEntity pageEntity = task.knownPage == null
+                    ? entityFactory.createPageEntity(siteEntity, task.path, task.content, task.statusCode,
+                    task.pageText, task.validators, task.contentHash)
+                    : entityFactory.replacePageEntity(task.knownPage.id(), siteEntity, task.path, task.content,
+                    task.statusCode, task.pageText, task.validators, task.contentHash);
+            entityFactory.saveLemmas(task.pageLemmas, siteEntity, pageEntity, lemmaDictionary);
+            persistedCounter.increment();
+            touchSiteStatus();
+        } catch (Exception e) {
+            log.error("Failed to save page {}: {}", task.url, e.getMessage());
+            failedCounter.increment();
+        } finally {
+            finish();
+        }
+    }
+
+    private void saveError(CrawlTask task) {
+        if (task.error instanceof HttpStatusException e) {
+            log.error("Error message: " + e.getMessage());
+            if (task.depth == 0) {
+                rootError = "Could not connect to site: " + task.url + " .Error message: " + e;
+            }
+            if (task.knownPage == null) {
+                entityFactory.createPageEntity(siteEntity, task.path, e.getMessage(), e.getStatusCode());
+            } else {
+                entityFactory.replacePageEntity(task.knownPage.id(), siteEntity, task.path, e.getMessage(),
+                        e.getStatusCode(), null, PageValidators.NONE, PageContentStore.hash(e.getMessage()));
+            }
+        } else if (task.depth == 0) {
+            log.error("Could not connect to site {} ", task.url);
+            rootError = "Could not connect to site: " + task.url + " .Error message: " + task.error;
+        } else {
+            log.error("Could not fetch page {}: {}", task.url, task.error.getMessage());
+        }
+    }
+
+    private void touchSiteStatus() {
+        long now = System.nanoTime();
+        long last = lastStatusUpdate.get();
+        if (now - last > STATUS_UPDATE_INTERVAL_NANOS && lastStatusUpdate.compareAndSet(last, now)
+                && !stopIndexingFlag.get()) {
+            siteEntity.setStatusTime(LocalDateTime.now());
+            entityFactory.savingToSiteRepository(siteEntity);
+        }
+    }
+
+    /**
+     * Передаёт страницу следующей стадии. Вызов всегда последний в стадии: либо страница
+     * уходит дальше, либо при остановке покидает конвейер.
+     */
+    private void handOff(ThreadPoolExecutor stage, CrawlTask task, StageAction action) {
+        if (stopIndexingFlag.get()) {
+            finish();
+            return;
+        }
+        try {
+            stage.execute(() -> {
+                try {
+                    action.run(task);
+                } catch (Exception e) {
+                    log.error("Failed to process page {}: {}", task.url, e.getMessage());
+                    failedCounter.increment();
+                    finish();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            finish();
+        }
+    }
+
+    /**
+     * Страница покинула конвейер: освобождается её место, и, если страниц больше нет, обход завершён.
+     */
+    private void finish() {
+        pipelineSlots.release();
+        if (pending.decrementAndGet() == 0) {
+            completion.complete(null);
+        } else {
+            dispatchFetches();
+        }
+    }
+
+    private ThreadPoolExecutor createStageExecutor(String stage, int threads, int capacity) {
+        int size = Math.max(1, threads);
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(capacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "crawl-" + stage + "-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    private static Counter stageCounter(MeterRegistry meterRegistry, String site, String stage) {
+        return Counter.builder("crawler.pages.processed")
+                .tag("site", site)
+                .tag("stage", stage)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Gauge с тем же именем и тегами MeterRegistry регистрирует один раз и дальше возвращает первый,
+     * поэтому gauge очередей снимаются по завершении обхода: следующий обход сайта зарегистрирует свои,
+     * а не будет показывать очереди прошлого конвейера.
+     */
+    private void removeQueueGauges() {
+        queueGauges.forEach(meterRegistry::remove);
+    }
+
+    private static Gauge stageQueueGauge(MeterRegistry meterRegistry, String site, String stage, Collection<?> queue) {
+        return Gauge.builder("crawler.queue.size", queue, Collection::size)
+                .tag("site", site)
+                .tag("stage", stage)
+                .strongReference(false)
+                .register(meterRegistry);
+    }
+
+    private interface StageAction {
+        void run(CrawlTask task) throws Exception;
+    }
+
+    private static class CrawlTask {
+        private final String url;
+        private final String path;
+        private final int depth;
+        private FetchedPage page;
+        private Throwable error;
+        private KnownPage knownPage;
+        private String content;
+        private byte[] contentHash;
+        private PageValidators validators = PageValidators.NONE;
+        private boolean unchanged;
+        private PageText pageText;
+        private int statusCode;
+        private PageLemmas pageLemmas;
+
+        CrawlTask(String url, String path, int depth) {
+            this.url = url;
+            this.path = path;
+            this.depth = depth;
+        }
+    }
+}
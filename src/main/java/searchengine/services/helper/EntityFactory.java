@@ -3,16 +3,21 @@ package searchengine.services.helper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.config.IndexingSettings;
 import searchengine.config.Site;
+import searchengine.dto.indexing.KnownPage;
 import searchengine.model.*;
+import searchengine.repository.IndexBatchRepository;
+import searchengine.repository.IndexBatchRepository.IndexRow;
 import searchengine.repository.IndexRepository;
 import searchengine.repository.LemmaRepository;
 import searchengine.repository.PageRepository;
 import searchengine.repository.SiteRepository;
+import searchengine.services.search.InvertedIndex;
 
 import java.time.LocalDateTime;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
 @Component
 @Slf4j
@@ -23,14 +28,24 @@ public class EntityFactory {
     private final PageRepository pageRepository;
     private final IndexRepository indexRepository;
     private final SiteRepository siteRepository;
+    private final IndexBatchRepository indexBatchRepository;
+    private final IndexingSettings indexingSettings;
+    private final InvertedIndex invertedIndex;
+    private final PageContentStore pageContentStore;
 
     @Autowired
     public EntityFactory(LemmaRepository lemmaRepository, PageRepository pageRepository,
-                         IndexRepository indexRepository, SiteRepository siteRepository) {
+                         IndexRepository indexRepository, SiteRepository siteRepository,
+                         IndexBatchRepository indexBatchRepository, IndexingSettings indexingSettings,
+                         InvertedIndex invertedIndex, PageContentStore pageContentStore) {
         this.lemmaRepository = lemmaRepository;
         this.pageRepository = pageRepository;
         this.indexRepository = indexRepository;
         this.siteRepository = siteRepository;
+        this.indexBatchRepository = indexBatchRepository;
+        this.indexingSettings = indexingSettings;
+        this.invertedIndex = invertedIndex;
+        this.pageContentStore = pageContentStore;
         instance = this;
     }
 
@@ -64,22 +79,78 @@ public class EntityFactory {
     }
 
     public PageEntity createPageEntity(SiteEntity siteEntity, String childUrl, String content, int statusCode) {
+        return createPageEntity(siteEntity, childUrl, content, statusCode, null);
+    }
+
+    public PageEntity createPageEntity(SiteEntity siteEntity, String childUrl, String content, int statusCode,
+                                       PageText pageText) {
+        return createPageEntity(siteEntity, childUrl, content, statusCode, pageText, PageValidators.NONE,
+                PageContentStore.hash(content));
+    }
+
+    public PageEntity createPageEntity(SiteEntity siteEntity, String childUrl, String content, int statusCode,
+                                       PageText pageText, PageValidators validators, byte[] contentHash) {
+        log.info("Save page: {}", childUrl);
+        PageEntity pageEntity = fillPageEntity(new PageEntity(), siteEntity, childUrl, content, statusCode,
+                pageText, validators, contentHash);
+        pageRepository.save(pageEntity);
+        return pageEntity;
+    }
+
+    /**
+     * Заменяет изменившуюся страницу, сохранённую прошлым обходом, под тем же id: её индексы удаляются,
+     * а frequency её лемм уменьшается. Леммы новой версии затем сохраняются {@link #saveLemmas}.
+     */
+    public PageEntity replacePageEntity(int pageId, SiteEntity siteEntity, String childUrl, String content,
+                                        int statusCode, PageText pageText, PageValidators validators,
+                                        byte[] contentHash) {
+        log.info("Replace page: {}", childUrl);
+        indexBatchRepository.deletePageIndexes(pageId);
+        invertedIndex.removePage(siteEntity.getId(), pageId);
         PageEntity pageEntity = new PageEntity();
+        pageEntity.setId(pageId);
+        fillPageEntity(pageEntity, siteEntity, childUrl, content, statusCode, pageText, validators, contentHash);
+        return pageRepository.save(pageEntity);
+    }
+
+    private PageEntity fillPageEntity(PageEntity pageEntity, SiteEntity siteEntity, String childUrl, String content,
+                                      int statusCode, PageText pageText, PageValidators validators,
+                                      byte[] contentHash) {
         pageEntity.setSites(siteEntity);
         pageEntity.setPath(childUrl);
-        pageEntity.setContent(content);
+        pageEntity.setBody(pageContentStore.save(content, contentHash));
         pageEntity.setCode(statusCode);
-        log.info("Save page: {}", childUrl);
-        pageRepository.save(pageEntity);
+        pageEntity.setEtag(validators.etag());
+        pageEntity.setLastModified(validators.lastModified());
+        if (pageText != null) {
+            pageEntity.setTitle(pageText.title());
+            pageEntity.setHeadings(pageText.headings());
+            pageEntity.setPlainText(pageText.text());
+        }
         return pageEntity;
     }
 
-    public void createIndexEntity(PageEntity pageEntity, LemmaEntity newLemma, float count) {
+    public void updatePageValidators(int pageId, PageValidators validators) {
+        pageRepository.updateValidators(pageId, validators.etag(), validators.lastModified());
+    }
+
+    /**
+     * HTML страницы, сохранённый прошлым обходом.
+     */
+    public String findPageHtml(KnownPage knownPage) {
+        if (knownPage.contentId() != null) {
+            return pageContentStore.html(knownPage.contentId());
+        }
+        return pageRepository.findById(knownPage.id()).map(pageContentStore::html).orElse("");
+    }
+
+    public void createIndexEntity(PageEntity pageEntity, LemmaEntity newLemma, float count, byte[] positions) {
         log.info("Save index");
         IndexEntity indexEntity = new IndexEntity();
         indexEntity.setPageId(pageEntity);
         indexEntity.setLemmaId(newLemma);
         indexEntity.setRank(count);
+        indexEntity.setPositions(positions);
         indexRepository.save(indexEntity);
     }
 
@@ -99,12 +170,8 @@ public class EntityFactory {
         indexRepository.save(indexEntity);
     }
 
-    public boolean existByPath(String childUrl) {
-        return pageRepository.existsByPath(childUrl);
-    }
-
-    public LemmaEntity findByLemmaIgnoreCaseAndSitesId(Map.Entry<String, Integer> lemma, SiteEntity siteEntity) {
-        return lemmaRepository.findByLemmaIgnoreCaseAndSitesId(lemma.getKey(), siteEntity.getId());
+    public LemmaEntity findByLemmaAndSitesId(Map.Entry<String, Integer> lemma, SiteEntity siteEntity) {
+        return lemmaRepository.findByLemmaAndSitesId(lemma.getKey(), siteEntity.getId());
     }
 
     public IndexEntity findByLemmaIdAndPageId(LemmaEntity lemmaEntity, PageEntity pageEntity) {
@@ -115,29 +182,89 @@ public class EntityFactory {
         return siteRepository.findById(idSite).orElseThrow(() -> new RuntimeException("Site not found"));
     }
 
-    public void handleLemmas(Lemmatizer lemmatizer, String content, SiteEntity siteEntity, PageEntity pageEntity) {
-        HashMap<String, Integer> lemmasList = lemmatizer.getLemmaCounts(content);
-        for (Map.Entry<String, Integer> lemma : lemmasList.entrySet()) {
+    @Transactional
+    public void handleLemmas(Lemmatizer lemmatizer, PageText pageText, SiteEntity siteEntity, PageEntity pageEntity) {
+        saveLemmas(lemmatizer.analyzePage(pageText, indexingSettings.isRecordPositions()), siteEntity, pageEntity);
+    }
+
+    @Transactional
+    public void saveLemmas(PageLemmas pageLemmas, SiteEntity siteEntity, PageEntity pageEntity) {
+        if (indexingSettings.isBatchWrites()) {
+            saveLemmasBatch(pageLemmas, siteEntity, pageEntity);
+        } else {
+            saveLemmasPerRow(pageLemmas, siteEntity, pageEntity);
+        }
+        invertedIndex.addPage(siteEntity.getId(), pageEntity.getId(), pageLemmas.counts());
+    }
+
+    public LemmaDictionary createLemmaDictionary(SiteEntity siteEntity) {
+        return new LemmaDictionary(siteEntity.getId(), indexBatchRepository);
+    }
+
+    /**
+     * Сохранение лемм страницы при обходе сайта: id лемм берутся из словаря сайта,
+     * frequency пишется словарём пакетами, а индексы страницы — одним пакетом.
+     */
+    public void saveLemmas(PageLemmas pageLemmas, SiteEntity siteEntity, PageEntity pageEntity,
+                           LemmaDictionary lemmaDictionary) {
+        Map<String, Integer> lemmaIds = lemmaDictionary.addPage(pageLemmas.counts().keySet());
+        saveIndexRows(pageLemmas, lemmaIds, pageEntity);
+        invertedIndex.addPage(siteEntity.getId(), pageEntity.getId(), pageLemmas.counts());
+        lemmaDictionary.flushIfDue();
+    }
+
+    private void saveLemmasPerRow(PageLemmas pageLemmas, SiteEntity siteEntity, PageEntity pageEntity) {
+        for (Map.Entry<String, Integer> lemma : pageLemmas.counts().entrySet()) {
             float count = lemma.getValue();
-            LemmaEntity lemmaEntity = findByLemmaIgnoreCaseAndSitesId(lemma, siteEntity);
+            byte[] positions = pageLemmas.positions().get(lemma.getKey());
+            LemmaEntity lemmaEntity = findByLemmaAndSitesId(lemma, siteEntity);
             IndexEntity indexEntityUniquePage = findByLemmaIdAndPageId(lemmaEntity, pageEntity);
             if (lemmaEntity != null) {
                 lemmaEntity.setFrequency(lemmaEntity.getFrequency() + 1);
                 savingToLemmaRepository(lemmaEntity);
                 if (indexEntityUniquePage != null) {
                     indexEntityUniquePage.setRank(count);
+                    indexEntityUniquePage.setPositions(positions);
                     savingToIndexRepository(indexEntityUniquePage);
                 }
                 if (indexEntityUniquePage == null) {
-                    createIndexEntity(pageEntity, lemmaEntity, count);
+                    createIndexEntity(pageEntity, lemmaEntity, count, positions);
                 }
             } else {
                 LemmaEntity newLemma = createLemmaEntity(siteEntity, lemma.getKey());
-                createIndexEntity(pageEntity, newLemma, count);
+                createIndexEntity(pageEntity, newLemma, count, positions);
             }
         }
     }
 
+    private void saveLemmasBatch(PageLemmas pageLemmas, SiteEntity siteEntity, PageEntity pageEntity) {
+        Map<String, Integer> lemmaCounts = pageLemmas.counts();
+        if (lemmaCounts.isEmpty()) {
+            return;
+        }
+        List<String> lemmas = new ArrayList<>(lemmaCounts.keySet());
+        Collections.sort(lemmas);
+        indexBatchRepository.upsertLemmas(siteEntity.getId(), lemmas);
+        Map<String, Integer> lemmaIds = indexBatchRepository.findLemmaIds(siteEntity.getId(), lemmas);
+        for (String lemma : lemmas) {
+            if (!lemmaIds.containsKey(lemma)) {
+                log.error("Lemma {} was not saved for site {}", lemma, siteEntity.getUrl());
+            }
+        }
+        saveIndexRows(pageLemmas, lemmaIds, pageEntity);
+    }
+
+    private void saveIndexRows(PageLemmas pageLemmas, Map<String, Integer> lemmaIds, PageEntity pageEntity) {
+        List<IndexRow> rows = new ArrayList<>(lemmaIds.size());
+        for (Map.Entry<String, Integer> lemma : lemmaIds.entrySet()) {
+            rows.add(new IndexRow(lemma.getValue(), pageLemmas.counts().get(lemma.getKey()).floatValue(),
+                    pageLemmas.positions().get(lemma.getKey())));
+        }
+        rows.sort(Comparator.comparingInt(IndexRow::lemmaId));
+        indexBatchRepository.upsertIndexes(pageEntity.getId(), rows);
+        log.info("Saved {} lemmas for page {}", rows.size(), pageEntity.getPath());
+    }
+
     public PageEntity findByPagePath(String path) {
         return pageRepository.findByPath(path);
     }
@@ -0,0 +1,41 @@
+package searchengine.services.helper;
+
+import lombok.Getter;
+import org.jsoup.nodes.Document;
+
+/**
+ * Ответ на запрос страницы. При ответе 304 на условный запрос документа нет:
+ * страница не изменилась с прошлого обхода.
+ */
+@Getter
+public class FetchedPage {
+    public static final int NOT_MODIFIED = 304;
+
+    private final String url;
+    private final Document document;
+    private final int statusCode;
+    private final PageValidators validators;
+
+    public FetchedPage(String url, Document document, int statusCode) {
+        this(url, document, statusCode, PageValidators.NONE);
+    }
+
+    public FetchedPage(String url, Document document, int statusCode, PageValidators validators) {
+        this.url = url;
+        this.document = document;
+        this.statusCode = statusCode;
+        this.validators = validators;
+    }
+
+    public static FetchedPage notModified(String url, PageValidators validators) {
+        return new FetchedPage(url, null, NOT_MODIFIED, validators);
+    }
+
+    public boolean isNotModified() {
+        return statusCode == NOT_MODIFIED;
+    }
+
+    public String getContent() {
+        return document.html();
+    }
+}
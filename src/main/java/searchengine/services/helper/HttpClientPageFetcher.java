@@ -0,0 +1,136 @@
+package searchengine.services.helper;
+
+import jakarta.annotation.PreDestroy;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Асинхронное скачивание через {@link HttpClient}: пул keep-alive соединений, HTTP/2 там,
+ * где его поддерживает сервер, и сжатие gzip/deflate. Пока ответ не пришёл, поток не занят,
+ * поэтому одновременно могут выполняться тысячи запросов на нескольких потоках.
+ */
+@Component
+public class HttpClientPageFetcher implements PageFetcher {
+    private final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+                Thread thread = new Thread(runnable, "http-client");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofMillis(TIMEOUT_MILLIS))
+            .executor(executor)
+            .build();
+
+    @Override
+    public String getName() {
+        return "http-client";
+    }
+
+    @Override
+    public CompletableFuture<FetchedPage> fetch(String url, PageValidators validators) {
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(Duration.ofMillis(TIMEOUT_MILLIS))
+                    .header("User-Agent", USER_AGENT)
+                    .header("Referer", REFERRER)
+                    .header("Accept-Encoding", "gzip, deflate");
+            if (validators.etag() != null) {
+                builder.header("If-None-Match", validators.etag());
+            }
+            if (validators.lastModified() != null) {
+                builder.header("If-Modified-Since", validators.lastModified());
+            }
+            request = builder.GET().build();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(new IOException("Malformed URL: " + url, e));
+        }
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    try {
+                        return toFetchedPage(url, validators, response);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
+    private FetchedPage toFetchedPage(String url, PageValidators validators, HttpResponse<byte[]> response)
+            throws IOException {
+        int statusCode = response.statusCode();
+        if (statusCode == FetchedPage.NOT_MODIFIED) {
+            return FetchedPage.notModified(url, validators);
+        }
+        if (statusCode >= 400) {
+            throw new HttpStatusException("HTTP error fetching URL", statusCode, url);
+        }
+        String charset = response.headers().firstValue("Content-Type")
+                .map(HttpClientPageFetcher::charsetOf)
+                .orElse(null);
+        String baseUri = response.uri().toString();
+        try (InputStream body = decode(response)) {
+            Document document = Jsoup.parse(body, charset, baseUri);
+            PageValidators responseValidators = new PageValidators(
+                    response.headers().firstValue("ETag").orElse(null),
+                    response.headers().firstValue("Last-Modified").orElse(null));
+            return new FetchedPage(url, document, statusCode, responseValidators);
+        }
+    }
+
+    private static InputStream decode(HttpResponse<byte[]> response) throws IOException {
+        byte[] body = response.body();
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("")
+                .trim().toLowerCase(Locale.ROOT);
+        InputStream raw = new ByteArrayInputStream(body);
+        return switch (encoding) {
+            case "gzip", "x-gzip" -> new GZIPInputStream(raw);
+            case "deflate" -> new InflaterInputStream(raw, new Inflater(!hasZlibHeader(body)));
+            default -> raw;
+        };
+    }
+
+    private static boolean hasZlibHeader(byte[] body) {
+        if (body.length < 2) {
+            return false;
+        }
+        int header = ((body[0] & 0xFF) << 8) | (body[1] & 0xFF);
+        return (body[0] & 0x0F) == 8 && header % 31 == 0;
+    }
+
+    private static String charsetOf(String contentType) {
+        for (String part : contentType.split(";")) {
+            String trimmed = part.trim();
+            if (trimmed.toLowerCase(Locale.ROOT).startsWith("charset=")) {
+                return trimmed.substring("charset=".length()).replace("\"", "").trim();
+            }
+        }
+        return null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
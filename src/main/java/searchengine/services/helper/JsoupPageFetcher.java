@@ -0,0 +1,50 @@
+package searchengine.services.helper;
+
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+
+@Component
+public class JsoupPageFetcher implements PageFetcher {
+
+    @Override
+    public String getName() {
+        return "jsoup";
+    }
+
+    @Override
+    public CompletableFuture<FetchedPage> fetch(String url, PageValidators validators) {
+        try {
+            Connection connection = connectToPage(url);
+            if (validators.etag() != null) {
+                connection.header("If-None-Match", validators.etag());
+            }
+            if (validators.lastModified() != null) {
+                connection.header("If-Modified-Since", validators.lastModified());
+            }
+            Connection.Response response = connection.execute();
+            if (response.statusCode() == FetchedPage.NOT_MODIFIED) {
+                return CompletableFuture.completedFuture(FetchedPage.notModified(url, validators));
+            }
+            Document document = response.parse();
+            PageValidators responseValidators = new PageValidators(response.header("ETag"),
+                    response.header("Last-Modified"));
+            return CompletableFuture.completedFuture(
+                    new FetchedPage(url, document, response.statusCode(), responseValidators));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public Connection connectToPage(String url) {
+        return Jsoup.connect(url).userAgent(USER_AGENT)
+                .timeout(TIMEOUT_MILLIS)
+                .ignoreHttpErrors(false)
+                .ignoreContentType(true)
+                .followRedirects(true)
+                .referrer(REFERRER);
+    }
+}
@@ -0,0 +1,134 @@
+package searchengine.services.helper;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.repository.IndexBatchRepository;
+import searchengine.repository.IndexBatchRepository.FrequencyDelta;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Словарь лемм одного сайта на время обхода: лемма → id строки таблицы lemma и число страниц с леммой.
+ * Недостающие леммы страницы создаются одним пакетом с frequency 0, дальше id находится в ConcurrentHashMap
+ * без запросов к БД. Число страниц копится в {@link LongAdder} без блокировок и записывается в таблицу lemma
+ * приращениями frequency раз в {@link #FLUSH_INTERVAL_NANOS} и в конце обхода, поэтому параллельно
+ * сохраняемые страницы не теряют обновлений и не блокируют строки лемм друг друга.
+ */
+@Slf4j
+public class LemmaDictionary {
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final int siteId;
+    private final IndexBatchRepository indexBatchRepository;
+    private final Map<String, LemmaCounter> lemmas = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private volatile long lastFlush = System.nanoTime();
+
+    public LemmaDictionary(int siteId, IndexBatchRepository indexBatchRepository) {
+        this.siteId = siteId;
+        this.indexBatchRepository = indexBatchRepository;
+        indexBatchRepository.findLemmaIds(siteId).forEach((lemma, id) -> lemmas.put(lemma, new LemmaCounter(id)));
+    }
+
+    /**
+     * id лемм страницы; каждая лемма учитывается как встреченная ещё на одной странице.
+     * Лемма, которую не удалось создать, в результат не попадает.
+     */
+    public Map<String, Integer> addPage(Collection<String> pageLemmas) {
+        Map<String, Integer> lemmaIds = new HashMap<>((int) (pageLemmas.size() / 0.75f) + 1);
+        List<String> missing = new ArrayList<>();
+        for (String lemma : pageLemmas) {
+            LemmaCounter counter = lemmas.get(lemma);
+            if (counter == null) {
+                missing.add(lemma);
+            } else {
+                counter.pages.increment();
+                lemmaIds.put(lemma, counter.id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return lemmaIds;
+        }
+        Collections.sort(missing);
+        indexBatchRepository.insertLemmas(siteId, missing);
+        Map<String, Integer> createdIds = indexBatchRepository.findLemmaIds(siteId, missing);
+        for (String lemma : missing) {
+            Integer id = createdIds.get(lemma);
+            if (id == null) {
+                log.error("Lemma {} was not saved for site {}", lemma, siteId);
+                continue;
+            }
+            LemmaCounter counter = lemmas.computeIfAbsent(lemma, key -> new LemmaCounter(id));
+            counter.pages.increment();
+            lemmaIds.put(lemma, counter.id);
+        }
+        return lemmaIds;
+    }
+
+    /**
+     * Записывает накопленные frequency, если с прошлой записи прошло FLUSH_INTERVAL_NANOS
+     * и их сейчас не пишет другой поток.
+     */
+    public void flushIfDue() {
+        if (System.nanoTime() - lastFlush > FLUSH_INTERVAL_NANOS && flushLock.tryLock()) {
+            try {
+                writeFrequencies();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    public void flush() {
+        flushLock.lock();
+        try {
+            writeFrequencies();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Счётчики не сбрасываются: записывается разность с уже записанным значением, поэтому
+     * увеличения, сделанные во время записи, попадут в следующую.
+     */
+    private void writeFrequencies() {
+        List<LemmaCounter> changed = new ArrayList<>();
+        List<FrequencyDelta> deltas = new ArrayList<>();
+        for (LemmaCounter counter : lemmas.values()) {
+            long pages = counter.pages.sum();
+            if (pages != counter.flushed) {
+                changed.add(counter);
+                deltas.add(new FrequencyDelta(counter.id, (int) (pages - counter.flushed)));
+                counter.pending = pages;
+            }
+        }
+        lastFlush = System.nanoTime();
+        if (deltas.isEmpty()) {
+            return;
+        }
+        deltas.sort(Comparator.comparingInt(FrequencyDelta::lemmaId));
+        indexBatchRepository.addLemmaFrequencies(deltas);
+        for (LemmaCounter counter : changed) {
+            counter.flushed = counter.pending;
+        }
+        log.info("Flushed frequencies of {} lemmas for site {}", deltas.size(), siteId);
+    }
+
+    /**
+     * flushed и pending меняются только под flushLock.
+     */
+    private static final class LemmaCounter {
+        private final int id;
+        private final LongAdder pages = new LongAdder();
+        private long flushed;
+        private long pending;
+
+        LemmaCounter(int id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package searchengine.services.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Позиции вхождений леммы в видимом тексте страницы ({@link PageText#text()}):
+ * порядковый номер слова и смещение его первого символа.
+ * Хранятся как разности с предыдущим вхождением в формате varint — обычно по 1–2 байта на число.
+ */
+public final class LemmaPositions {
+
+    private LemmaPositions() {
+    }
+
+    public interface PositionHandler {
+        void onPosition(int ordinal, int offset);
+    }
+
+    public static void decode(byte[] positions, PositionHandler handler) {
+        int ordinal = 0;
+        int offset = 0;
+        int index = 0;
+        while (index < positions.length) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = positions[index++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            ordinal += value;
+            value = 0;
+            shift = 0;
+            do {
+                b = positions[index++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            offset += value;
+            handler.onPosition(ordinal, offset);
+        }
+    }
+
+    public static int[] offsets(byte[] positions) {
+        return decodeColumn(positions, false);
+    }
+
+    public static int[] ordinals(byte[] positions) {
+        return decodeColumn(positions, true);
+    }
+
+    private static int[] decodeColumn(byte[] positions, boolean ordinals) {
+        int[][] values = {new int[8]};
+        int[] size = new int[1];
+        decode(positions, (ordinal, offset) -> {
+            if (size[0] == values[0].length) {
+                values[0] = Arrays.copyOf(values[0], size[0] * 2);
+            }
+            values[0][size[0]++] = ordinals ? ordinal : offset;
+        });
+        return Arrays.copyOf(values[0], size[0]);
+    }
+
+    /**
+     * Накопление позиций одной леммы; вхождения добавляются в порядке следования в тексте.
+     */
+    public static final class Builder {
+        private int[] values = new int[8];
+        private int size;
+
+        public void add(int ordinal, int offset) {
+            if (size + 2 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = ordinal;
+            values[size++] = offset;
+        }
+
+        public int count() {
+            return size / 2;
+        }
+
+        public byte[] encode() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(size + 4);
+            int previousOrdinal = 0;
+            int previousOffset = 0;
+            for (int i = 0; i < size; i += 2) {
+                writeVarint(out, values[i] - previousOrdinal);
+                writeVarint(out, values[i + 1] - previousOffset);
+                previousOrdinal = values[i];
+                previousOffset = values[i + 1];
+            }
+            return out.toByteArray();
+        }
+
+        private static void writeVarint(ByteArrayOutputStream out, int value) {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+    }
+}
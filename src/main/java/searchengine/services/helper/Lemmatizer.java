@@ -1,11 +1,15 @@
 package searchengine.services.helper;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
 import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Service;
+import searchengine.config.IndexingSettings;
+import searchengine.services.helper.WordFormCache.WordForms;
 
-import java.io.IOException;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -15,46 +19,93 @@ import java.util.stream.Collectors;
 @Service
 @Component
 public class Lemmatizer {
+    private static final Pattern HTML_TAG = Pattern.compile("<[^>]*>");
+    private static final Pattern NOT_RUSSIAN_LETTER = Pattern.compile("([^а-я\\s])");
     private final RussianLuceneMorphology russianLuceneMorphology;
+    private final WordFormCache wordFormCache;
 
-    public Lemmatizer() {
-        try {
-            russianLuceneMorphology = new RussianLuceneMorphology();
-        } catch (IOException e) {
-            log.error(e.getMessage());
-            throw new RuntimeException(e);
-        }
+    public Lemmatizer(RussianLuceneMorphology russianLuceneMorphology, IndexingSettings indexingSettings,
+                      MeterRegistry meterRegistry) {
+        this.russianLuceneMorphology = russianLuceneMorphology;
+        this.wordFormCache = new WordFormCache(indexingSettings.getLemmaCacheSize());
+        Gauge.builder("lemmatizer.cache.size", wordFormCache, WordFormCache::size).register(meterRegistry);
+        Gauge.builder("lemmatizer.cache.hit.ratio", wordFormCache, WordFormCache::hitRatio).register(meterRegistry);
+        FunctionCounter.builder("lemmatizer.cache.requests", wordFormCache, WordFormCache::hitCount)
+                .tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("lemmatizer.cache.requests", wordFormCache, WordFormCache::missCount)
+                .tag("result", "miss").register(meterRegistry);
     }
 
     public String stripHtmlTags(String html) {
-        Pattern pattern = Pattern.compile("<[^>]*>");
-        Matcher matcher = pattern.matcher(html);
+        Matcher matcher = HTML_TAG.matcher(html);
         return matcher.replaceAll("");
     }
 
     public String normalizeText(String text) {
-        return text.toLowerCase(Locale.ROOT)
-                .replaceAll("([^а-я\\s])", " ")
+        return NOT_RUSSIAN_LETTER.matcher(text.toLowerCase(Locale.ROOT))
+                .replaceAll(" ")
                 .trim();
     }
 
+    /**
+     * Считает леммы русских слов текста. Текст (в том числе HTML) просматривается
+     * за один проход {@link RussianWordTokenizer}, счётчики копятся в int[] без упаковки.
+     */
     public HashMap<String, Integer> getLemmaCounts(String text) {
-        text = normalizeText(text);
-        text = stripHtmlTags(text);
-        HashMap<String, Integer> lemmaCounts = new HashMap<>();
-        String[] words = text.toLowerCase(Locale.ROOT).split("\\s+");
-        for (String w : words) {
-            List<String> lemmas = getLemmaList(w);
-            if (!lemmas.isEmpty()) {
-                for (String lemma : lemmas) {
-                    int count = lemmaCounts.getOrDefault(lemma, 0);
-                    lemmaCounts.put(lemma, count + 1);
+        HashMap<String, int[]> counters = new HashMap<>();
+        RussianWordTokenizer.tokenize(text, (word, start) -> {
+            for (String lemma : wordFormCache.get(word, this::analyzeWord).lemmas()) {
+                int[] counter = counters.get(lemma);
+                if (counter == null) {
+                    counters.put(lemma, new int[]{1});
+                } else {
+                    counter[0]++;
                 }
             }
+        });
+        HashMap<String, Integer> lemmaCounts = new HashMap<>((int) (counters.size() / 0.75f) + 1);
+        for (Map.Entry<String, int[]> counter : counters.entrySet()) {
+            lemmaCounts.put(counter.getKey(), counter.getValue()[0]);
         }
         return lemmaCounts;
     }
 
+    /**
+     * Леммы страницы для индекса: заголовок и видимый текст. С recordPositions за тот же проход
+     * для каждой леммы запоминаются позиции её вхождений в тексте; у лемм только из заголовка позиций нет.
+     */
+    public PageLemmas analyzePage(PageText pageText, boolean recordPositions) {
+        if (!recordPositions) {
+            return PageLemmas.withoutPositions(getLemmaCounts(pageText.title() + "\n" + pageText.text()));
+        }
+        HashMap<String, LemmaPositions.Builder> builders = new HashMap<>();
+        int[] ordinal = new int[1];
+        RussianWordTokenizer.tokenize(pageText.text(), (word, start) -> {
+            for (String lemma : wordFormCache.get(word, this::analyzeWord).lemmas()) {
+                builders.computeIfAbsent(lemma, key -> new LemmaPositions.Builder()).add(ordinal[0], start);
+            }
+            ordinal[0]++;
+        });
+        HashMap<String, Integer> titleCounts = getLemmaCounts(pageText.title());
+        Set<String> lemmas = new HashSet<>(builders.keySet());
+        lemmas.addAll(titleCounts.keySet());
+        int capacity = (int) (lemmas.size() / 0.75f) + 1;
+        HashMap<String, Integer> lemmaCounts = new HashMap<>(capacity);
+        HashMap<String, byte[]> positions = new HashMap<>(capacity);
+        for (String lemma : lemmas) {
+            LemmaPositions.Builder builder = builders.get(lemma);
+            int count = titleCounts.getOrDefault(lemma, 0);
+            if (builder == null) {
+                positions.put(lemma, new byte[0]);
+            } else {
+                count += builder.count();
+                positions.put(lemma, builder.encode());
+            }
+            lemmaCounts.put(lemma, count);
+        }
+        return new PageLemmas(lemmaCounts, positions);
+    }
+
     private boolean isRussianStopWord(String word) {
         List<String> morphForm = russianLuceneMorphology.getMorphInfo(word);
         return morphForm.stream()
@@ -66,24 +117,21 @@ public class Lemmatizer {
                         || element.length() <= 3);
     }
 
-    private boolean isWordInRussian(String word) {
-        String regex = "[а-яА-Я]+";
-        return word.matches(regex);
+    public List<String> getLemmaList(String word) {
+        if (!RussianWordTokenizer.isRussianWord(word)) {
+            return List.of();
+        }
+        return wordFormCache.get(word, this::analyzeWord).lemmas();
     }
 
-    public List<String> getLemmaList(String word) {
-        List<String> wordLemmas = new ArrayList<>();
+    private WordForms analyzeWord(String word) {
         try {
-            if (isWordInRussian(word)) {
-                List<String> normalForms = russianLuceneMorphology.getNormalForms(word);
-                if (!isRussianStopWord(word) && !word.isEmpty()) {
-                    wordLemmas.addAll(normalForms);
-                }
-            }
+            List<String> normalForms = russianLuceneMorphology.getNormalForms(word);
+            return new WordForms(List.copyOf(normalForms), isRussianStopWord(word));
         } catch (Exception e) {
             log.error(e.getMessage());
+            return WordForms.NONE;
         }
-        return wordLemmas;
     }
 
     public List<Integer> locateLemmasInText(String htmlPage, List<String> targetLemmas) {
@@ -0,0 +1,143 @@
+package searchengine.services.helper;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import searchengine.config.IndexingSettings;
+import searchengine.model.PageContentEntity;
+import searchengine.model.PageEntity;
+import searchengine.repository.PageContentRepository;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Сохраняет HTML страниц сжатым и без повторов ({@link PageContentEntity}) и распаковывает его
+ * только при обращении. Метрики page.content.bytes{kind=raw|stored} показывают, сколько байт HTML
+ * записано бы в прежнем виде и сколько записано на самом деле, page.content.savings.ratio — долю экономии.
+ */
+@Component
+public class PageContentStore {
+    private final PageContentRepository pageContentRepository;
+    private final int compressionLevel;
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+
+    public PageContentStore(PageContentRepository pageContentRepository, IndexingSettings indexingSettings,
+                            MeterRegistry meterRegistry) {
+        this.pageContentRepository = pageContentRepository;
+        this.compressionLevel = indexingSettings.getContentCompressionLevel();
+        FunctionCounter.builder("page.content.bytes", rawBytes, LongAdder::sum)
+                .tag("kind", "raw").register(meterRegistry);
+        FunctionCounter.builder("page.content.bytes", storedBytes, LongAdder::sum)
+                .tag("kind", "stored").register(meterRegistry);
+        FunctionCounter.builder("page.content.duplicates", duplicates, LongAdder::sum).register(meterRegistry);
+        Gauge.builder("page.content.savings.ratio", this, PageContentStore::savingsRatio).register(meterRegistry);
+    }
+
+    /**
+     * Ссылка на сохранённое тело страницы: новое тело сжимается и вставляется, повтор находится по hash.
+     */
+    public PageContentEntity save(String html) {
+        return save(html, hash(html));
+    }
+
+    public PageContentEntity save(String html, byte[] hash) {
+        byte[] raw = html.getBytes(StandardCharsets.UTF_8);
+        rawBytes.add(raw.length);
+        Integer id = pageContentRepository.findIdByHash(hash);
+        if (id == null) {
+            byte[] compressed = compress(raw);
+            if (pageContentRepository.insertIfAbsent(hash, raw.length, compressed) > 0) {
+                storedBytes.add(compressed.length);
+            } else {
+                duplicates.increment();
+            }
+            id = pageContentRepository.findIdByHash(hash);
+        } else {
+            duplicates.increment();
+        }
+        return pageContentRepository.getReferenceById(id);
+    }
+
+    /**
+     * HTML страницы: тело загружается и распаковывается только здесь.
+     */
+    public String html(PageEntity pageEntity) {
+        if (pageEntity.getContent() != null) {
+            return pageEntity.getContent();
+        }
+        PageContentEntity body = pageEntity.getBody();
+        return body == null ? "" : html(body.getId());
+    }
+
+    public String html(int contentId) {
+        return pageContentRepository.findById(contentId)
+                .map(body -> new String(decompress(body.getData(), body.getRawLength()), StandardCharsets.UTF_8))
+                .orElse("");
+    }
+
+    /**
+     * SHA-256 байт HTML в UTF-8: по нему находятся повторы тел и изменения страниц при повторном обходе.
+     */
+    public static byte[] hash(String html) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(html.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public double savingsRatio() {
+        long raw = rawBytes.sum();
+        return raw == 0 ? 0 : 1 - (double) storedBytes.sum() / raw;
+    }
+
+    private byte[] compress(byte[] raw) {
+        Deflater deflater = new Deflater(compressionLevel);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(byte[] data, int rawLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] raw = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, length, rawLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != rawLength) {
+                throw new IllegalStateException("Corrupted page content: " + length + " of " + rawLength + " bytes");
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted page content", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
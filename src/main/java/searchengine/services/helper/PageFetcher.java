@@ -0,0 +1,25 @@
+package searchengine.services.helper;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Способ скачивания страниц для {@link ConnectToPage}.
+ * Метод вызывается из потока планировщика запросов; блокирующая реализация может
+ * выполнить запрос сразу и вернуть завершённый future.
+ * Ответ с кодом ошибки завершает future исключением {@link org.jsoup.HttpStatusException}.
+ * Непустые validators отправляются условными заголовками; ответ 304 возвращается как
+ * {@link FetchedPage#notModified} с теми же validators.
+ */
+public interface PageFetcher {
+    String USER_AGENT = "Mozilla/5.0 (Windows; U; WindowsNT 5.1; en-US; rv1.8.1.6) Gecko/20070725 Firefox/2.0.0.6";
+    String REFERRER = "http://www.google.com";
+    int TIMEOUT_MILLIS = 10000;
+
+    String getName();
+
+    CompletableFuture<FetchedPage> fetch(String url, PageValidators validators);
+
+    default CompletableFuture<FetchedPage> fetch(String url) {
+        return fetch(url, PageValidators.NONE);
+    }
+}
@@ -0,0 +1,14 @@
+package searchengine.services.helper;
+
+import java.util.Map;
+
+/**
+ * Леммы страницы: число вхождений каждой и, если индексатор их записывает, закодированные позиции
+ * ({@link LemmaPositions}). Без записи позиций карта positions пустая.
+ */
+public record PageLemmas(Map<String, Integer> counts, Map<String, byte[]> positions) {
+
+    public static PageLemmas withoutPositions(Map<String, Integer> counts) {
+        return new PageLemmas(counts, Map.of());
+    }
+}
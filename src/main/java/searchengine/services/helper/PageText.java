@@ -0,0 +1,26 @@
+package searchengine.services.helper;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+/**
+ * Текст страницы, извлечённый при индексации: заголовок, заголовки разделов (h1–h6) по одному на строку
+ * и видимый текст body без разметки, скриптов и стилей. Поиск показывает их без разбора HTML.
+ */
+public record PageText(String title, String headings, String text) {
+    private static final int MAX_TITLE_LENGTH = 1000;
+    private static final int MAX_HEADINGS_LENGTH = 16_000;
+
+    public static PageText extract(Document document) {
+        String title = truncate(document.title(), MAX_TITLE_LENGTH);
+        String headings = truncate(String.join("\n", document.select("h1, h2, h3, h4, h5, h6").eachText()),
+                MAX_HEADINGS_LENGTH);
+        Element body = document.body();
+        String text = body == null ? "" : body.text();
+        return new PageText(title, headings, text);
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value.length() <= maxLength ? value : value.substring(0, maxLength);
+    }
+}
@@ -0,0 +1,9 @@
+package searchengine.services.helper;
+
+/**
+ * Заголовки ETag и Last-Modified последнего ответа страницы. Отправляются при повторном обходе
+ * как If-None-Match и If-Modified-Since, чтобы сервер мог ответить 304 без тела.
+ */
+public record PageValidators(String etag, String lastModified) {
+    public static final PageValidators NONE = new PageValidators(null, null);
+}
@@ -0,0 +1,184 @@
+package searchengine.services.helper;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.IndexingSettings;
+import searchengine.config.Site;
+import searchengine.config.SitesList;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Ограничивает частоту и число одновременных запросов к каждому хосту.
+ * Запросы ставятся в очередь хоста и запускаются по таймеру, когда подходит их слот,
+ * поэтому ожидание очереди не занимает поток. Задержка и параллельность берутся
+ * из настроек сайта в indexing-settings.sites или из значений по умолчанию.
+ */
+@Slf4j
+@Component
+public class PolitenessScheduler {
+    private final Map<String, HostQueue> hosts = new ConcurrentHashMap<>();
+    private final ExecutorService requestExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "page-fetch-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final SitesList sitesList;
+    private final IndexingSettings indexingSettings;
+
+    public PolitenessScheduler(SitesList sitesList, IndexingSettings indexingSettings) {
+        this.sitesList = sitesList;
+        this.indexingSettings = indexingSettings;
+    }
+
+    public <T> CompletableFuture<T> schedule(String url, Callable<T> request) {
+        return scheduleAsync(url, () -> {
+            try {
+                return CompletableFuture.completedFuture(request.call());
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        });
+    }
+
+    /**
+     * Для асинхронных запросов: слот хоста занят, пока не завершится возвращённый future,
+     * а сам поток освобождается сразу после отправки запроса.
+     */
+    public <T> CompletableFuture<T> scheduleAsync(String url, Supplier<? extends CompletionStage<T>> request) {
+        HostQueue hostQueue = hosts.computeIfAbsent(hostOf(url), this::createHostQueue);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        hostQueue.waiting.add(new PendingRequest<>(request, result));
+        hostQueue.drain();
+        return result;
+    }
+
+    /**
+     * Отменяет все запросы, которые ещё ждут своей очереди.
+     */
+    public void cancelPending() {
+        for (HostQueue hostQueue : hosts.values()) {
+            PendingRequest<?> pending;
+            while ((pending = hostQueue.waiting.poll()) != null) {
+                pending.result.cancel(false);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cancelPending();
+        requestExecutor.shutdownNow();
+    }
+
+    static String hostOf(String url) {
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = start;
+        while (end < url.length() && "/:?#".indexOf(url.charAt(end)) < 0) {
+            end++;
+        }
+        String host = url.substring(start, end).toLowerCase(Locale.ROOT);
+        return host.startsWith("www.") ? host.substring(4) : host;
+    }
+
+    private HostQueue createHostQueue(String host) {
+        long delay = indexingSettings.getDefaultDelay();
+        int concurrency = indexingSettings.getDefaultConcurrency();
+        if (sitesList.getSites() != null) {
+            for (Site site : sitesList.getSites()) {
+                if (hostOf(site.getUrl()).equals(host)) {
+                    delay = site.getDelay() != null ? site.getDelay() : delay;
+                    concurrency = site.getConcurrency() != null ? site.getConcurrency() : concurrency;
+                    break;
+                }
+            }
+        }
+        log.info("Host {}: delay {} ms, concurrency {}", host, delay, concurrency);
+        return new HostQueue(TimeUnit.MILLISECONDS.toNanos(delay), Math.max(1, concurrency));
+    }
+
+    private record PendingRequest<T>(Supplier<? extends CompletionStage<T>> request, CompletableFuture<T> result) {
+    }
+
+    private class HostQueue {
+        private final Queue<PendingRequest<?>> waiting = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicLong nextSlot = new AtomicLong(System.nanoTime());
+        private final long delayNanos;
+        private final int concurrency;
+
+        HostQueue(long delayNanos, int concurrency) {
+            this.delayNanos = delayNanos;
+            this.concurrency = concurrency;
+        }
+
+        void drain() {
+            while (!waiting.isEmpty()) {
+                int current = active.get();
+                if (current >= concurrency) {
+                    return;
+                }
+                if (!active.compareAndSet(current, current + 1)) {
+                    continue;
+                }
+                PendingRequest<?> pending = waiting.poll();
+                if (pending == null) {
+                    active.decrementAndGet();
+                    continue;
+                }
+                start(pending);
+            }
+        }
+
+        private <T> void start(PendingRequest<T> pending) {
+            long now = System.nanoTime();
+            long slot = nextSlot.getAndUpdate(previous -> Math.max(previous, now) + delayNanos);
+            long wait = Math.max(0, slot - now);
+            Executor executor = CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS, requestExecutor);
+            try {
+                executor.execute(() -> run(pending));
+            } catch (RejectedExecutionException e) {
+                pending.result.completeExceptionally(e);
+                release();
+            }
+        }
+
+        private <T> void run(PendingRequest<T> pending) {
+            if (pending.result.isDone()) {
+                release();
+                return;
+            }
+            try {
+                pending.request.get().whenComplete((value, error) -> {
+                    if (error != null) {
+                        pending.result.completeExceptionally(error);
+                    } else {
+                        pending.result.complete(value);
+                    }
+                    release();
+                });
+            } catch (Throwable e) {
+                pending.result.completeExceptionally(e);
+                release();
+            }
+        }
+
+        private void release() {
+            active.decrementAndGet();
+            drain();
+        }
+    }
+}
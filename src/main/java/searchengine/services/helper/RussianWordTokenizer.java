@@ -0,0 +1,63 @@
+package searchengine.services.helper;
+
+import java.util.Arrays;
+
+/**
+ * Разбивает текст на русские слова за один проход по символам.
+ * Словом считается непрерывная последовательность букв «а»–«я» в любом регистре;
+ * все остальные символы, включая разметку и латиницу, — разделители.
+ * Строки создаются только для найденных слов, уже в нижнем регистре.
+ */
+public final class RussianWordTokenizer {
+
+    private RussianWordTokenizer() {
+    }
+
+    public interface WordHandler {
+        void onWord(String word, int start);
+    }
+
+    public static void tokenize(CharSequence text, WordHandler handler) {
+        int length = text.length();
+        char[] buffer = new char[32];
+        int wordLength = 0;
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 'а' && c <= 'я') {
+                if (wordLength == 0) {
+                    start = i;
+                } else if (wordLength == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, wordLength * 2);
+                }
+                buffer[wordLength++] = c;
+            } else if (c >= 'А' && c <= 'Я') {
+                if (wordLength == 0) {
+                    start = i;
+                } else if (wordLength == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, wordLength * 2);
+                }
+                buffer[wordLength++] = (char) (c + ('а' - 'А'));
+            } else if (wordLength > 0) {
+                handler.onWord(new String(buffer, 0, wordLength), start);
+                wordLength = 0;
+            }
+        }
+        if (wordLength > 0) {
+            handler.onWord(new String(buffer, 0, wordLength), start);
+        }
+    }
+
+    public static boolean isRussianWord(CharSequence word) {
+        if (word.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (!(c >= 'а' && c <= 'я') && !(c >= 'А' && c <= 'Я')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
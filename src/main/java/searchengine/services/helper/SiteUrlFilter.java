@@ -0,0 +1,136 @@
+package searchengine.services.helper;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Отбор и приведение к единому виду ссылок одного сайта.
+ * Создаётся один раз на обход: ссылка разбирается за один проход без регулярных выражений,
+ * схема и хост приводятся к нижнему регистру, «www.», якорь и завершающие «/» отбрасываются.
+ * Ссылки на другие хосты, на файлы из списка расширений и (если не включено отбрасывание параметров)
+ * ссылки с параметрами не допускаются.
+ */
+public class SiteUrlFilter {
+    private static final Set<String> BLOCKED_EXTENSIONS = Set.of("rtf", "pptx", "xlsx", "yaml", "svg", "zip",
+            "xml", "icon", "ico", "json", "jpg", "css", "jpeg", "webp", "doc", "png", "gif", "bmp", "pdf");
+
+    private final String siteUrl;
+    private final String host;
+    private final int port;
+    private final String basePath;
+    private final boolean stripQuery;
+
+    public SiteUrlFilter(String siteUrl, boolean stripQuery) {
+        this.siteUrl = siteUrl.endsWith("/") ? siteUrl : siteUrl + "/";
+        this.stripQuery = stripQuery;
+        ParsedUrl site = parse(this.siteUrl);
+        if (site == null) {
+            throw new IllegalArgumentException("Site url is not valid: " + siteUrl);
+        }
+        this.host = site.host;
+        this.port = site.port;
+        this.basePath = site.path.endsWith("/") ? site.path : site.path + "/";
+    }
+
+    /**
+     * Путь страницы относительно адреса сайта или null, если ссылка не относится к обходу.
+     */
+    public String toPath(String url) {
+        ParsedUrl parsed = parse(url);
+        if (parsed == null || !parsed.host.equals(host) || parsed.port != port) {
+            return null;
+        }
+        if (parsed.hasQuery && !stripQuery) {
+            return null;
+        }
+        String path = parsed.path;
+        if (hasBlockedExtension(path)) {
+            return null;
+        }
+        if (!path.startsWith(basePath)) {
+            return (path + "/").equals(basePath) ? "" : null;
+        }
+        int end = path.length();
+        while (end > basePath.length() && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(basePath.length(), end);
+    }
+
+    public String toUrl(String path) {
+        return siteUrl + path;
+    }
+
+    private static boolean hasBlockedExtension(String path) {
+        int segmentStart = path.lastIndexOf('/') + 1;
+        int dot = path.lastIndexOf('.');
+        if (dot < segmentStart || dot == path.length() - 1) {
+            return false;
+        }
+        return BLOCKED_EXTENSIONS.contains(path.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private static ParsedUrl parse(String url) {
+        String value = url.trim();
+        int schemeEnd = value.indexOf("://");
+        if (schemeEnd <= 0) {
+            return null;
+        }
+        String scheme = value.substring(0, schemeEnd).toLowerCase(Locale.ROOT);
+        int defaultPort;
+        if (scheme.equals("https")) {
+            defaultPort = 443;
+        } else if (scheme.equals("http")) {
+            defaultPort = 80;
+        } else {
+            return null;
+        }
+        int authorityStart = schemeEnd + 3;
+        int authorityEnd = authorityStart;
+        while (authorityEnd < value.length() && "/?#".indexOf(value.charAt(authorityEnd)) < 0) {
+            authorityEnd++;
+        }
+        String authority = value.substring(authorityStart, authorityEnd);
+        authority = authority.substring(authority.lastIndexOf('@') + 1).toLowerCase(Locale.ROOT);
+        int port = defaultPort;
+        int colon = authority.lastIndexOf(':');
+        if (colon >= 0) {
+            try {
+                port = colon == authority.length() - 1 ? defaultPort : Integer.parseInt(authority.substring(colon + 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            authority = authority.substring(0, colon);
+        }
+        if (authority.startsWith("www.")) {
+            authority = authority.substring(4);
+        }
+        if (authority.isEmpty()) {
+            return null;
+        }
+
+        StringBuilder path = new StringBuilder();
+        boolean hasQuery = false;
+        for (int i = authorityEnd; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '#') {
+                break;
+            }
+            if (c == '?') {
+                hasQuery = true;
+                break;
+            }
+            if (c == '/' && !path.isEmpty() && path.charAt(path.length() - 1) == '/') {
+                continue;
+            }
+            path.append(c);
+        }
+        if (path.isEmpty()) {
+            path.append('/');
+        }
+        return new ParsedUrl(authority, port == defaultPort ? -1 : port, path.toString(), hasQuery);
+    }
+
+    private record ParsedUrl(String host, int port, String path, boolean hasQuery) {
+    }
+}
@@ -0,0 +1,118 @@
+package searchengine.services.helper;
+
+import searchengine.config.IndexingSettings;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Множество посещённых путей одного сайта на время обхода.
+ * Путь «захватывается» до скачивания страницы: {@link #claim(String)} вернёт true
+ * ровно одному потоку, поэтому одна и та же страница не скачивается и не сохраняется дважды.
+ * Вместо строк хранятся 64-битные отпечатки путей, а для очень больших сайтов
+ * можно включить фильтр Блума фиксированного размера. Фильтр Блума — режим с потерями:
+ * новая страница, принятая им за посещённую, не обходится (см. {@link BloomFilterSet}).
+ */
+public abstract class VisitedUrlSet {
+    private final LongAdder size = new LongAdder();
+
+    public static VisitedUrlSet create(IndexingSettings settings) {
+        if (settings.getVisitedBloomFilterSize() > 0) {
+            return new BloomFilterSet(settings.getVisitedBloomFilterSize(), settings.getVisitedBloomFilterFpp());
+        }
+        return new FingerprintSet();
+    }
+
+    public boolean claim(String path) {
+        boolean claimed = add(fingerprint(path));
+        if (claimed) {
+            size.increment();
+        }
+        return claimed;
+    }
+
+    public long size() {
+        return size.sum();
+    }
+
+    protected abstract boolean add(long fingerprint);
+
+    static long fingerprint(String path) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < path.length(); i++) {
+            hash ^= path.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static class FingerprintSet extends VisitedUrlSet {
+        private final Set<Long> fingerprints = ConcurrentHashMap.newKeySet();
+
+        @Override
+        protected boolean add(long fingerprint) {
+            return fingerprints.add(fingerprint);
+        }
+    }
+
+    /**
+     * Память не зависит от числа ссылок, но при ложном срабатывании новая страница считается уже посещённой
+     * и в обход не попадает; вероятность этого задаёт visited-bloom-filter-fpp. Страницы, сохранённые прошлым
+     * обходом, {@link CrawlPipeline} захватывает по точному множеству и фильтр для них не спрашивает.
+     * <p>
+     * Все биты пути лежат в одном 64-битном слове (blocked Bloom filter) и выставляются одним compareAndSet:
+     * захватывает путь тот поток, чей CAS выставил их все, остальные видят слово уже с этими битами.
+     * При битах в разных словах два потока могли выставить каждый свой бит первым и оба получить true.
+     */
+    private static class BloomFilterSet extends VisitedUrlSet {
+        private static final int MAX_HASH_COUNT = 16;
+
+        private final AtomicLongArray words;
+        private final int hashCount;
+
+        BloomFilterSet(long expectedInsertions, double fpp) {
+            long optimalBits = (long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBits + 63) >>> 6));
+            this.words = new AtomicLongArray(wordCount);
+            long bitCount = (long) wordCount << 6;
+            this.hashCount = Math.min(MAX_HASH_COUNT,
+                    Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2))));
+        }
+
+        @Override
+        protected boolean add(long fingerprint) {
+            int index = (int) ((fingerprint >>> 1) % words.length());
+            long mask = mask(fingerprint);
+            while (true) {
+                long word = words.get(index);
+                if ((word & mask) == mask) {
+                    return false;
+                }
+                if (words.compareAndSet(index, word, word | mask)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Биты пути внутри слова: двойное хеширование по другим битам отпечатка, чем номер слова.
+         */
+        private long mask(long fingerprint) {
+            long hash = fingerprint * 0x9e3779b97f4a7c15L;
+            int hash1 = (int) (hash >>> 32);
+            int hash2 = (int) hash | 1;
+            long mask = 0;
+            for (int i = 0; i < hashCount; i++) {
+                mask |= 1L << ((hash1 + i * hash2) >>> 26);
+            }
+            return mask;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package searchengine.services.helper;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограниченный по размеру кэш разбора словоформ: нормальные формы слова и признак служебной части речи.
+ * Разбит на сегменты с собственной блокировкой и вытеснением давно не использованных записей,
+ * поэтому потоки индексации и поиска почти не конкурируют.
+ * Морфологический разбор выполняется вне блокировки.
+ */
+public class WordFormCache {
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public WordFormCache(int maxSize) {
+        int segmentSize = Math.max(1, maxSize / SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    public WordForms get(String word, Function<String, WordForms> loader) {
+        Segment segment = segments[(word.hashCode() & Integer.MAX_VALUE) % SEGMENT_COUNT];
+        WordForms forms;
+        synchronized (segment) {
+            forms = segment.get(word);
+        }
+        if (forms != null) {
+            hits.increment();
+            return forms;
+        }
+        misses.increment();
+        forms = loader.apply(word);
+        synchronized (segment) {
+            segment.put(word, forms);
+        }
+        return forms;
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public double hitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public record WordForms(List<String> normalForms, boolean stopWord) {
+        public static final WordForms NONE = new WordForms(List.of(), true);
+
+        public List<String> lemmas() {
+            return stopWord ? List.of() : normalForms;
+        }
+    }
+
+    private static class Segment extends LinkedHashMap<String, WordForms> {
+        private final int maxSize;
+
+        Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, WordForms> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
@@ -3,7 +3,7 @@ package searchengine.services.indexing;
 
 public interface WebSiteIndexingService {
 
-    void startIndexing();
+    void startIndexing(boolean incremental);
 
     void stopIndexing();
 
@@ -1,40 +1,59 @@
 package searchengine.services.indexing;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import searchengine.config.IndexingSettings;
 import searchengine.config.Site;
 import searchengine.config.SitesList;
+import searchengine.dto.indexing.KnownPage;
 import searchengine.model.*;
+import searchengine.repository.IndexBatchRepository;
 import searchengine.repository.IndexRepository;
 import searchengine.repository.LemmaRepository;
+import searchengine.repository.PageContentRepository;
 import searchengine.repository.PageRepository;
 import searchengine.repository.SiteRepository;
 import searchengine.services.helper.*;
+import searchengine.services.search.InvertedIndex;
 
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntSupplier;
 
 @RequiredArgsConstructor
 @Service
 @Slf4j
 public class WebsiteIndexingServiceImpl implements WebSiteIndexingService {
+    private static final int WIPE_CHUNK_SIZE = 50_000;
+    private static final int REMOVE_CHUNK_SIZE = 1000;
     private final PageRepository pageRepository;
     private final SiteRepository siteRepository;
     private final SitesList sites;
     private final AtomicBoolean stopIndexingFlag;
-    private ForkJoinPool pool;
+    private final List<CrawlPipeline> pipelines = new CopyOnWriteArrayList<>();
+    private final ReadWriteLock contentLock = new ReentrantReadWriteLock();
     private final LemmaRepository lemmaRepository;
     private final IndexRepository indexRepository;
+    private final IndexBatchRepository indexBatchRepository;
+    private final PageContentRepository pageContentRepository;
     @Getter
     private boolean isIndexing;
     private final EntityFactory entityFactory;
     private final ConnectToPage connectToPage;
     private final Lemmatizer lemmatizer;
+    private final IndexingSettings indexingSettings;
+    private final PolitenessScheduler politenessScheduler;
+    private final MeterRegistry meterRegistry;
+    private final InvertedIndex invertedIndex;
 
     public boolean existenceSiteInConfigurationFile(String url) {
         List<Site> sitesList = sites.getSites();
@@ -42,71 +61,166 @@ public class WebsiteIndexingServiceImpl implements WebSiteIndexingService {
                 .anyMatch(site -> url.startsWith(site.getUrl()));
     }
 
-    @Transactional
+    /**
+     * Удаляет данные сайта несколькими запросами DELETE ... WHERE site_id порциями по
+     * WIPE_CHUNK_SIZE строк (индексы, леммы, страницы, сам сайт) и создаёт запись сайта заново.
+     * Время не зависит от числа JPA-сущностей сайта, ход удаления пишется в лог. Тела страниц общие
+     * для всех сайтов и удаляются в {@link #deleteUnreferencedContent()}, когда обход закончен.
+     */
     public SiteEntity rebuildingCreatingInDatabase(Site site) {
-        SiteEntity siteEntityDelete = siteRepository.findByUrl(site.getUrl());
-        if (siteEntityDelete != null) {
-            List<Integer> pageIds = pageRepository.findBySites_Id(siteEntityDelete.getId()).stream()
-                    .map(PageEntity::getId)
-                    .toList();
-            if (!pageIds.isEmpty()) {
-                List<PageEntity> pages = pageRepository.findBySites_Id(siteEntityDelete.getId());
-                for (PageEntity page : pages) {
-                    List<IndexEntity> indexes = indexRepository.findByPageId_Id(page.getId());
-                    indexRepository.deleteAll(indexes);
-                    List<LemmaEntity> lemmas = lemmaRepository.findBySitesId(siteEntityDelete.getId());
-                    lemmaRepository.deleteAll(lemmas);
-                    pageRepository.delete(page);
-                }
-            }
-            siteRepository.delete(siteEntityDelete);
+        Integer siteId = siteRepository.findIdByUrl(site.getUrl());
+        if (siteId != null) {
+            log.info("Wiping site {} before indexing", site.getUrl());
+            String url = site.getUrl();
+            deleteInChunks(url, "index", () -> indexRepository.deleteBySiteId(siteId, WIPE_CHUNK_SIZE));
+            deleteInChunks(url, "lemma", () -> lemmaRepository.deleteBySiteId(siteId, WIPE_CHUNK_SIZE));
+            deleteInChunks(url, "page", () -> pageRepository.deleteBySiteId(siteId, WIPE_CHUNK_SIZE));
+            siteRepository.deleteSiteById(siteId);
+            invertedIndex.removeSite(siteId);
         }
         return entityFactory.createSiteEntity(site);
     }
 
+    /**
+     * Для повторного обхода: сайт остаётся в базе со своими страницами и получает статус INDEXING.
+     * Сохраняется новый объект сайта с тем же id, без загрузки его страниц и лемм.
+     */
+    private SiteEntity reopenSite(Site site, int siteId) {
+        log.info("Incremental indexing of site {}", site.getUrl());
+        SiteEntity siteEntity = new SiteEntity();
+        siteEntity.setId(siteId);
+        siteEntity.setUrl(site.getUrl());
+        siteEntity.setName(site.getName());
+        siteEntity.setStatus(IndexationStatuses.INDEXING);
+        siteEntity.setStatusTime(LocalDateTime.now());
+        siteEntity.setLastError(null);
+        siteRepository.save(siteEntity);
+        return siteEntity;
+    }
+
+    private Map<String, KnownPage> findKnownPages(int siteId) {
+        Map<String, KnownPage> knownPages = new HashMap<>();
+        for (KnownPage knownPage : pageRepository.findKnownPages(siteId)) {
+            knownPages.put(knownPage.path(), knownPage);
+        }
+        return knownPages;
+    }
+
+    /**
+     * После повторного обхода удаляет страницы прошлого обхода, на которые больше нет ссылок.
+     * Леммы без страниц удаляются после каждого обхода, тела страниц — после обхода всех сайтов.
+     */
+    private void removeUnvisitedPages(SiteEntity siteEntity, Collection<KnownPage> unvisitedPages) {
+        int siteId = siteEntity.getId();
+        List<Integer> pageIds = new ArrayList<>(unvisitedPages.size());
+        for (KnownPage page : unvisitedPages) {
+            indexBatchRepository.deletePageIndexes(page.id());
+            invertedIndex.removePage(siteId, page.id());
+            pageIds.add(page.id());
+        }
+        for (int from = 0; from < pageIds.size(); from += REMOVE_CHUNK_SIZE) {
+            pageRepository.deleteAllByIdInBatch(
+                    pageIds.subList(from, Math.min(from + REMOVE_CHUNK_SIZE, pageIds.size())));
+        }
+        log.info("Site {}: removed {} pages that are no longer linked", siteEntity.getUrl(), pageIds.size());
+    }
+
+    /**
+     * Удаляет тела страниц, на которые не ссылается ни одна страница. Тело сохраняется раньше страницы
+     * и в другой транзакции, поэтому чистка идёт только после того, как все конвейеры обхода завершились,
+     * и не пересекается с addOrUpdate: он держит contentLock на чтение, пока сохраняет страницу.
+     */
+    private void deleteUnreferencedContent() {
+        contentLock.writeLock().lock();
+        try {
+            deleteInChunks("all sites", "page_content", () -> pageContentRepository.deleteUnreferenced(WIPE_CHUNK_SIZE));
+        } finally {
+            contentLock.writeLock().unlock();
+        }
+    }
+
+    private void deleteInChunks(String siteUrl, String table, IntSupplier deleteChunk) {
+        long startTime = System.currentTimeMillis();
+        long total = 0;
+        int deleted;
+        do {
+            deleted = deleteChunk.getAsInt();
+            total += deleted;
+            if (deleted > 0) {
+                log.info("Site {}: deleted {} rows from {} ({} ms)", siteUrl, total, table,
+                        System.currentTimeMillis() - startTime);
+            }
+        } while (deleted == WIPE_CHUNK_SIZE);
+    }
+
+    /**
+     * Обходит все сайты из конфигурации. При incremental сайт, уже бывший в базе, не удаляется:
+     * его страницы запрашиваются условно, неизменившиеся пропускаются, изменившиеся заменяются,
+     * а страницы, на которые больше нет ссылок, удаляются после обхода.
+     */
     @Async
-    public void startIndexing() {
-        pool = new ForkJoinPool(9);
+    public void startIndexing(boolean incremental) {
         stopIndexingFlag.set(false);
         isIndexing = true;
         List<Site> sitesList = sites.getSites();
-        List<ForkJoinTask<Void>> forkJoinTaskList = new ArrayList<>();
+        Map<SiteEntity, CompletableFuture<Void>> crawls = new LinkedHashMap<>();
+        Map<SiteEntity, CrawlPipeline> sitePipelines = new HashMap<>();
 
         for (Site site : sitesList) {
-            SiteEntity siteEntity = rebuildingCreatingInDatabase(site);
-            ForkJoinTask<Void> forkJoinTask = new IndexingRecursiveAction(
-                    site.getUrl(), siteEntity, 5, 0, entityFactory,
-                    stopIndexingFlag, pool, connectToPage, lemmatizer);
-            forkJoinTaskList.add(forkJoinTask);
-            forkJoinTask.fork();
+            Integer siteId = incremental ? siteRepository.findIdByUrl(site.getUrl()) : null;
+            SiteEntity siteEntity = siteId == null ? rebuildingCreatingInDatabase(site) : reopenSite(site, siteId);
+            Map<String, KnownPage> knownPages = siteId == null ? Map.of() : findKnownPages(siteId);
+            CrawlPipeline pipeline = new CrawlPipeline(siteEntity, VisitedUrlSet.create(indexingSettings),
+                    stopIndexingFlag, entityFactory, connectToPage, lemmatizer, indexingSettings, meterRegistry,
+                    knownPages);
+            pipelines.add(pipeline);
+            sitePipelines.put(siteEntity, pipeline);
+            crawls.put(siteEntity, pipeline.start());
+        }
+        for (Map.Entry<SiteEntity, CompletableFuture<Void>> crawl : crawls.entrySet()) {
+            crawl.getValue().join();
+            CrawlPipeline pipeline = sitePipelines.get(crawl.getKey());
+            pipeline.shutdown();
+            pipeline.flushLemmaFrequencies();
+            if (!stopIndexingFlag.get()) {
+                SiteEntity siteEntity = crawl.getKey();
+                if (incremental && pipeline.getRootError() == null) {
+                    removeUnvisitedPages(siteEntity, pipeline.getUnvisitedPages());
+                }
+                deleteInChunks(siteEntity.getUrl(), "lemma",
+                        () -> lemmaRepository.deleteUnusedBySiteId(siteEntity.getId(), WIPE_CHUNK_SIZE));
+                siteEntity.setStatus(pipeline.getRootError() == null ? IndexationStatuses.INDEXED : IndexationStatuses.FAILED);
+                siteEntity.setLastError(pipeline.getRootError());
+                siteEntity.setStatusTime(LocalDateTime.now());
+                siteRepository.save(siteEntity);
+            }
+            invertedIndex.persistSite(crawl.getKey().getId());
         }
-        for (ForkJoinTask<Void> task : forkJoinTaskList) {
-            task.join();
+        pipelines.clear();
+        deleteUnreferencedContent();
+        if (!stopIndexingFlag.get()) {
+            isIndexing = false;
         }
-        pool.shutdown();
     }
 
     @Override
     public void stopIndexing() {
         log.info("The user stopped indexing");
         stopIndexingFlag.set(true);
-        if (pool != null && !pool.isShutdown()) {
-            pool.shutdownNow();
-            try {
-                pool.awaitTermination(1, TimeUnit.MINUTES);
-            } catch (InterruptedException e) {
-                log.error(e.getMessage());
-                Thread.interrupted();
-                Thread.currentThread().interrupt();
+        politenessScheduler.cancelPending();
+        for (CrawlPipeline pipeline : pipelines) {
+            pipeline.stop();
+        }
+        try {
+            for (CrawlPipeline pipeline : pipelines) {
+                pipeline.awaitTermination(1, TimeUnit.MINUTES);
             }
+        } catch (InterruptedException e) {
+            log.error(e.getMessage());
+            Thread.currentThread().interrupt();
         }
         if (isIndexing) {
-            List<SiteEntity> sites = siteRepository.findAll();
-            for (SiteEntity site : sites) {
-                site.setStatus(IndexationStatuses.FAILED);
-                site.setLastError("Индексация остановлена пользователем");
-                siteRepository.save(site);
-            }
+            siteRepository.updateAllStatuses(IndexationStatuses.FAILED, "Индексация остановлена пользователем");
             isIndexing = false;
         }
     }
@@ -134,11 +248,17 @@ public class WebsiteIndexingServiceImpl implements WebSiteIndexingService {
                 siteEntity = entityFactory.createSiteEntity(desiredSite);
                 idSite = siteEntity.getId();
             }
-            SinglePageCrawl pageCrawl = new SinglePageCrawl(idSite, path, entityFactory, connectToPage);
+            SinglePageCrawl pageCrawl = new SinglePageCrawl(idSite, path, entityFactory, connectToPage, lemmatizer);
             if (page == null || !pageRepository.existsById(page.getId())) {
-                pageCrawl.indexPage(url);
+                contentLock.readLock().lock();
+                try {
+                    pageCrawl.indexPage(url);
+                } finally {
+                    contentLock.readLock().unlock();
+                }
+                invertedIndex.persistSite(idSite);
             } else {
-                System.out.println("Страница не была удалена");
+                log.info("Page {} was not deleted before re-indexing", path);
             }
         }
     }
@@ -158,6 +278,7 @@ public class WebsiteIndexingServiceImpl implements WebSiteIndexingService {
                 }
             }
             pageRepository.delete(page);
+            invertedIndex.removePage(page.getSites().getId(), page.getId());
         }
     }
 }
@@ -0,0 +1,47 @@
+package searchengine.services.search;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+
+/**
+ * BM25: редкие на сайте леммы весят больше частых, а вклад повторов на странице насыщается
+ * и нормируется на длину страницы относительно средней, поэтому длинные страницы не выигрывают за счёт объёма.
+ */
+@Component
+public class Bm25Scoring implements ScoringModel {
+    private final float k1;
+    private final float b;
+
+    public Bm25Scoring(SearchSettings searchSettings) {
+        this.k1 = searchSettings.getBm25K1();
+        this.b = searchSettings.getBm25B();
+    }
+
+    @Override
+    public String getName() {
+        return "bm25";
+    }
+
+    @Override
+    public LemmaScorer forLemma(SiteStatistics siteStatistics, int documentFrequency) {
+        int pageCount = Math.max(siteStatistics.pageCount(), documentFrequency);
+        float idf = (float) Math.log(1 + (pageCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+        float averageLength = siteStatistics.averagePageLength() > 0 ? (float) siteStatistics.averagePageLength() : 1;
+        float weight = idf * (k1 + 1);
+        float lengthWeight = k1 * b / averageLength;
+        float constantWeight = k1 * (1 - b);
+        return new LemmaScorer() {
+            @Override
+            public float score(float termFrequency, int pageLength) {
+                float norm = pageLength > 0 ? constantWeight + lengthWeight * pageLength : k1;
+                return weight * termFrequency / (termFrequency + norm);
+            }
+
+            @Override
+            public float maxScore(float maxTermFrequency) {
+                float minNorm = Math.min(constantWeight + lengthWeight, k1);
+                return weight * maxTermFrequency / (maxTermFrequency + minNorm);
+            }
+        };
+    }
+}
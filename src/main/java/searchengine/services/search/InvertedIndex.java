@@ -0,0 +1,546 @@
+package searchengine.services.search;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+import searchengine.repository.IndexBatchRepository;
+import searchengine.repository.SiteRepository;
+import searchengine.services.search.PostingList.Postings;
+import searchengine.services.search.ScoringModel.LemmaScorer;
+import searchengine.services.search.ScoringModel.SiteStatistics;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Поисковый индекс в памяти: для каждого сайта словарь лемм со списками страниц и rank,
+ * а также длины страниц (массив по id страницы) и средняя длина страницы сайта для моделей релевантности.
+ * Загружается при старте из таблицы index или файлов {@link PostingSegment} и пополняется индексацией
+ * по мере сохранения страниц, поэтому поиск по словам не выполняет SQL-запросов, кроме чтения данных найденных
+ * страниц. Позиции лемм нужны только фразам, близости и сниппетам и читаются из таблицы index для проверяемых
+ * страниц порциями по {@link #POSITION_BATCH_SIZE}.
+ */
+@Slf4j
+@Component
+@DependsOn({"entityManagerFactory", "schemaUpgrade"})
+public class InvertedIndex {
+    private static final int POSITION_BATCH_SIZE = 256;
+    private final Map<Integer, Map<String, PostingList>> sites = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicLong> siteGenerations = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final Map<Integer, SiteLengths> siteLengths = new ConcurrentHashMap<>();
+    private final Object pageLengthsLock = new Object();
+    private volatile int[] pageLengths = new int[1024];
+    private final IndexBatchRepository indexBatchRepository;
+    private final SiteRepository siteRepository;
+    private final SegmentStore segmentStore;
+
+    public InvertedIndex(IndexBatchRepository indexBatchRepository, SiteRepository siteRepository,
+                         SegmentStore segmentStore) {
+        this.indexBatchRepository = indexBatchRepository;
+        this.siteRepository = siteRepository;
+        this.segmentStore = segmentStore;
+    }
+
+    /**
+     * При хранении сегментами каждый сайт читается из своего файла, а устаревший или отсутствующий
+     * файл заменяется чтением сайта из таблицы index и записью нового файла.
+     */
+    @PostConstruct
+    public void load() {
+        long startTime = System.currentTimeMillis();
+        long[] count = new long[1];
+        IndexBatchRepository.PostingHandler loader = (siteId, lemma, pageId, rank) -> {
+            postingList(siteId, lemma).put(pageId, rank);
+            setPageLength(siteId, pageId, pageLength(pageId) + (int) rank);
+            count[0]++;
+        };
+        if (!segmentStore.isEnabled()) {
+            indexBatchRepository.forEachPosting(loader);
+        } else {
+            for (int siteId : siteRepository.findAllIds()) {
+                if (!loadSegment(siteId, count)) {
+                    indexBatchRepository.forEachPosting(siteId, loader);
+                    persistSite(siteId);
+                }
+            }
+        }
+        log.info("Loaded {} postings for {} sites into search index in {} ms",
+                count[0], sites.size(), System.currentTimeMillis() - startTime);
+    }
+
+    private boolean loadSegment(int siteId, long[] count) {
+        Map<String, Postings> lemmas = new HashMap<>();
+        if (!segmentStore.read(siteId, indexBatchRepository.findSegmentStamp(siteId), lemmas::put)) {
+            return false;
+        }
+        Map<String, PostingList> siteLemmas = sites.computeIfAbsent(siteId, id -> new ConcurrentHashMap<>());
+        for (Map.Entry<String, Postings> lemma : lemmas.entrySet()) {
+            Postings postings = lemma.getValue();
+            siteLemmas.put(lemma.getKey(), new PostingList(postings));
+            for (int i = 0; i < postings.size(); i++) {
+                int pageId = postings.pageIds()[i];
+                setPageLength(siteId, pageId, pageLength(pageId) + (int) postings.ranks()[i]);
+            }
+            count[0] += postings.size();
+        }
+        return true;
+    }
+
+    /**
+     * Записывает списки страниц сайта в файл сегмента, если включено хранение сегментами.
+     * Вызывается, когда страницы сайта не меняются: после обхода или обновления страницы.
+     */
+    public void persistSite(int siteId) {
+        if (!segmentStore.isEnabled()) {
+            return;
+        }
+        Map<String, Postings> lemmas = new TreeMap<>();
+        sites.getOrDefault(siteId, Map.of()).forEach((lemma, postingList) -> {
+            Postings postings = postingList.snapshot();
+            if (postings.size() > 0) {
+                lemmas.put(lemma, postings);
+            }
+        });
+        segmentStore.writeAsync(siteId, indexBatchRepository.findSegmentStamp(siteId), lemmas);
+    }
+
+    public void addPage(int siteId, int pageId, Map<String, Integer> lemmaCounts) {
+        int length = 0;
+        for (Map.Entry<String, Integer> lemma : lemmaCounts.entrySet()) {
+            postingList(siteId, lemma.getKey()).put(pageId, lemma.getValue());
+            length += lemma.getValue();
+        }
+        setPageLength(siteId, pageId, length);
+        nextGeneration(siteId);
+        segmentStore.invalidate(siteId);
+    }
+
+    public void removePage(int siteId, int pageId) {
+        Map<String, PostingList> lemmas = sites.get(siteId);
+        if (lemmas == null) {
+            return;
+        }
+        for (PostingList postingList : lemmas.values()) {
+            postingList.remove(pageId);
+        }
+        setPageLength(siteId, pageId, 0);
+        nextGeneration(siteId);
+        segmentStore.invalidate(siteId);
+    }
+
+    public void removeSite(int siteId) {
+        sites.remove(siteId);
+        segmentStore.delete(siteId);
+        siteLengths.remove(siteId);
+        nextGeneration(siteId);
+    }
+
+    /**
+     * Поколение индекса сайта: меняется при каждом сохранении или удалении его страниц.
+     */
+    public long generation(int siteId) {
+        AtomicLong siteGeneration = siteGenerations.get(siteId);
+        return siteGeneration == null ? 0 : siteGeneration.get();
+    }
+
+    /**
+     * Поколение индекса всех сайтов: меняется вместе с поколением любого сайта.
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Число страниц сайта с леммой; 0, если леммы нет.
+     */
+    public int frequency(int siteId, String lemma) {
+        Postings postings = postings(siteId, lemma);
+        return postings == null ? 0 : postings.size();
+    }
+
+    /**
+     * Число страниц сайта и их средняя длина — сумма rank всех лемм страницы.
+     */
+    public SiteStatistics statistics(int siteId) {
+        SiteLengths lengths = siteLengths.get(siteId);
+        return lengths == null ? SiteStatistics.EMPTY : lengths.statistics();
+    }
+
+    /**
+     * Позиции лемм на страницах сайта из таблицы index; леммы без позиций на странице пропускаются,
+     * страниц без таких лемм в ответе нет.
+     */
+    public Map<Integer, Map<String, byte[]>> positions(int siteId, List<Integer> pageIds, Collection<String> lemmas) {
+        return indexBatchRepository.findPositions(siteId, lemmas, pageIds);
+    }
+
+    public int pageLength(int pageId) {
+        int[] lengths = pageLengths;
+        return pageId >= 0 && pageId < lengths.length ? lengths[pageId] : 0;
+    }
+
+    /**
+     * Передаёт в collector страницы сайта, содержащие все обязательные леммы запроса и все его фразы,
+     * с суммой вкладов лемм по модели релевантности. Леммы, встречающиеся более чем на commonLemmaShare
+     * страниц сайта, необязательны: они только добавляют вклад. Самая редкая лемма и леммы фраз
+     * обязательны всегда. Оценка страницы, на которой леммы стоят близко, умножается
+     * на 1 + proximityWeight * близость ({@link PositionalMatcher#proximity}).
+     * <p>
+     * Пересечение идёт от самого короткого списка, по остальным — экспоненциальным поиском.
+     * По верхним границам вкладов (MaxScore) страница, которая уже не может войти в лучшие k collector'а,
+     * засчитывается в общее число найденных без подсчёта оценки и без поиска в списках необязательных лемм.
+     * Граница учитывает наибольшую прибавку за близость, а отсекаются только страницы с границей строго
+     * ниже порога: при равной оценке выше встаёт страница с меньшим id.
+     * <p>
+     * Близость без фраз: оценка без позиций — нижняя граница итоговой, поэтому k лучших таких оценок
+     * (floor) тоже задают порог. Откладываются только страницы, которые ещё могут войти в лучшие k,
+     * и позиции читаются для них в {@link #collectByProximity}. Фразы: засчитать страницу можно только
+     * после проверки фразы, поэтому страницы пересечения проверяются по мере обхода порциями
+     * в {@link #collectPhraseBatch}, а оценка считается лишь у тех, что ещё могут войти в лучшие k.
+     */
+    public void collectPages(int siteId, SearchQuery query, ScoringModel scoringModel,
+                             double commonLemmaShare, float proximityWeight, TopKCollector collector) {
+        List<Term> terms = new ArrayList<>(query.lemmas().size());
+        for (String lemma : query.lemmas()) {
+            Postings postings = postings(siteId, lemma);
+            if (postings == null || postings.size() == 0) {
+                return;
+            }
+            terms.add(new Term(lemma, postings));
+        }
+        if (terms.isEmpty()) {
+            return;
+        }
+        terms.sort(Comparator.comparingInt(term -> term.postings().size()));
+        SiteStatistics siteStatistics = statistics(siteId);
+        double commonFrequency = commonLemmaShare > 0 && commonLemmaShare < 1
+                ? commonLemmaShare * siteStatistics.pageCount() : Double.MAX_VALUE;
+        Set<String> phraseLemmas = query.phraseLemmas();
+        List<Term> required = new ArrayList<>();
+        List<Term> optional = new ArrayList<>();
+        for (Term term : terms) {
+            boolean common = term.postings().size() > commonFrequency && !phraseLemmas.contains(term.lemma());
+            (required.isEmpty() || !common ? required : optional).add(term);
+        }
+        Evaluation requiredEvaluation = new Evaluation(required, scoringModel, siteStatistics);
+        Evaluation optionalEvaluation = new Evaluation(optional, scoringModel, siteStatistics);
+        optionalEvaluation.sortByMaxScoreDescending();
+        float[] optionalBounds = optionalEvaluation.remainingMaxScores();
+        float requiredBound = requiredEvaluation.remainingMaxScores()[0];
+        float boostBound = proximityWeight > 0 && terms.size() > 1 ? 1 + proximityWeight : 1;
+        boolean checkPhrases = !query.phrases().isEmpty();
+        TopKCollector floor = boostBound > 1 && !checkPhrases ? new TopKCollector(collector.k()) : null;
+        Candidates candidates = checkPhrases || floor != null ? new Candidates() : null;
+
+        Postings shortest = required.get(0).postings();
+        int[] positions = new int[required.size()];
+        candidates:
+        for (int i = 0; i < shortest.size(); i++) {
+            int pageId = shortest.pageIds()[i];
+            positions[0] = i;
+            for (int j = 1; j < required.size(); j++) {
+                int position = requiredEvaluation.advance(j, pageId);
+                Postings postings = required.get(j).postings();
+                if (position == postings.size()) {
+                    break candidates;
+                }
+                if (postings.pageIds()[position] != pageId) {
+                    continue candidates;
+                }
+                positions[j] = position;
+            }
+            float threshold = floor == null
+                    ? collector.threshold() : Math.max(collector.threshold(), floor.threshold());
+            if ((requiredBound + optionalBounds[0]) * boostBound < threshold) {
+                if (checkPhrases) {
+                    candidates.add(pageId, Float.NaN);
+                    if (candidates.size() == POSITION_BATCH_SIZE) {
+                        collectPhraseBatch(siteId, query, candidates, proximityWeight, boostBound, collector);
+                    }
+                } else {
+                    collector.countHit();
+                }
+                continue;
+            }
+            int pageLength = pageLength(pageId);
+            float rank = 0;
+            for (int j = 0; j < required.size(); j++) {
+                Postings postings = required.get(j).postings();
+                rank += requiredEvaluation.scorers[j].score(postings.ranks()[positions[j]], pageLength);
+            }
+            for (int j = 0; j < optional.size(); j++) {
+                if ((rank + optionalBounds[j]) * boostBound < threshold) {
+                    break;
+                }
+                Postings postings = optionalEvaluation.terms.get(j).postings();
+                int position = optionalEvaluation.advance(j, pageId);
+                if (position < postings.size() && postings.pageIds()[position] == pageId) {
+                    rank += optionalEvaluation.scorers[j].score(postings.ranks()[position], pageLength);
+                }
+            }
+            if (checkPhrases) {
+                candidates.add(pageId, rank * boostBound < threshold ? Float.NaN : rank);
+                if (candidates.size() == POSITION_BATCH_SIZE) {
+                    collectPhraseBatch(siteId, query, candidates, proximityWeight, boostBound, collector);
+                }
+            } else if (floor == null) {
+                collector.collect(pageId, rank);
+            } else if (rank * boostBound < threshold) {
+                collector.countHit();
+            } else {
+                floor.collect(pageId, rank);
+                candidates.add(pageId, rank);
+            }
+        }
+        if (checkPhrases) {
+            collectPhraseBatch(siteId, query, candidates, proximityWeight, boostBound, collector);
+        } else if (floor != null) {
+            collectByProximity(siteId, query, candidates, floor.threshold(), proximityWeight, boostBound, collector);
+        }
+    }
+
+    /**
+     * Прибавка за близость для страниц, отложенных при обходе пересечения без фраз. Страницы идут
+     * по убыванию оценки без позиций, и позиции читаются порциями только для тех, что с наибольшей
+     * прибавкой ещё могут войти в лучшие k; первая страница ниже порога и все следующие засчитываются
+     * без чтения позиций.
+     */
+    private void collectByProximity(int siteId, SearchQuery query, Candidates candidates, float floorThreshold,
+                                    float proximityWeight, float boostBound, TopKCollector collector) {
+        int[] order = candidates.orderByRankDescending();
+        int from = 0;
+        while (from < order.length) {
+            float threshold = Math.max(floorThreshold, collector.threshold());
+            int to = from;
+            while (to < order.length && to - from < POSITION_BATCH_SIZE
+                    && candidates.rank(order[to]) * boostBound >= threshold) {
+                to++;
+            }
+            if (to == from) {
+                break;
+            }
+            List<Integer> pageIds = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                pageIds.add(candidates.pageId(order[i]));
+            }
+            Map<Integer, Map<String, byte[]>> batchPositions = positions(siteId, pageIds, query.lemmas());
+            for (int i = from; i < to; i++) {
+                int pageId = candidates.pageId(order[i]);
+                float rank = candidates.rank(order[i]);
+                if (rank * boostBound < collector.threshold()) {
+                    collector.countHit();
+                    continue;
+                }
+                collector.collect(pageId, boost(rank, batchPositions.getOrDefault(pageId, Map.of()), proximityWeight));
+            }
+            from = to;
+        }
+        for (int i = from; i < order.length; i++) {
+            collector.countHit();
+        }
+    }
+
+    /**
+     * Проверяет фразы у порции страниц пересечения по позициям из таблицы index и очищает порцию.
+     * Страница с оценкой NaN уже не может войти в лучшие k: при совпадении фраз она только засчитывается.
+     */
+    private void collectPhraseBatch(int siteId, SearchQuery query, Candidates candidates, float proximityWeight,
+                                    float boostBound, TopKCollector collector) {
+        if (candidates.size() == 0) {
+            return;
+        }
+        List<Integer> pageIds = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            pageIds.add(candidates.pageId(i));
+        }
+        Map<Integer, Map<String, byte[]>> batchPositions = positions(siteId, pageIds, query.lemmas());
+        for (int i = 0; i < candidates.size(); i++) {
+            int pageId = candidates.pageId(i);
+            float rank = candidates.rank(i);
+            Map<String, byte[]> pagePositions = batchPositions.getOrDefault(pageId, Map.of());
+            if (!PositionalMatcher.matchesPhrases(query.phrases(), pagePositions)) {
+                continue;
+            }
+            if (Float.isNaN(rank) || rank * boostBound < collector.threshold()) {
+                collector.countHit();
+            } else {
+                collector.collect(pageId, boostBound > 1 ? boost(rank, pagePositions, proximityWeight) : rank);
+            }
+        }
+        candidates.clear();
+    }
+
+    private static float boost(float rank, Map<String, byte[]> pagePositions, float proximityWeight) {
+        byte[][] termPositions = pagePositions.values().toArray(new byte[0][]);
+        return rank * (1 + proximityWeight * PositionalMatcher.proximity(termPositions, termPositions.length));
+    }
+
+    private Postings postings(int siteId, String lemma) {
+        Map<String, PostingList> lemmas = sites.get(siteId);
+        PostingList postingList = lemmas == null ? null : lemmas.get(lemma);
+        return postingList == null ? null : postingList.snapshot();
+    }
+
+    private void setPageLength(int siteId, int pageId, int length) {
+        int previous;
+        synchronized (pageLengthsLock) {
+            int[] lengths = pageLengths;
+            if (pageId >= lengths.length) {
+                if (length == 0) {
+                    return;
+                }
+                lengths = Arrays.copyOf(lengths, Math.max(pageId + 1, lengths.length * 2));
+            }
+            previous = lengths[pageId];
+            lengths[pageId] = length;
+            pageLengths = lengths;
+        }
+        if (previous != length) {
+            siteLengths.computeIfAbsent(siteId, id -> new SiteLengths()).update(previous, length);
+        }
+    }
+
+    private void nextGeneration(int siteId) {
+        siteGenerations.computeIfAbsent(siteId, id -> new AtomicLong()).incrementAndGet();
+        generation.incrementAndGet();
+    }
+
+    private PostingList postingList(int siteId, String lemma) {
+        return sites.computeIfAbsent(siteId, id -> new ConcurrentHashMap<>())
+                .computeIfAbsent(lemma, key -> new PostingList());
+    }
+
+    /**
+     * Сумма длин и число страниц сайта для средней длины страницы.
+     */
+    private static class SiteLengths {
+        private int pageCount;
+        private long totalLength;
+
+        synchronized void update(int previousLength, int length) {
+            if (previousLength == 0) {
+                pageCount++;
+            } else if (length == 0) {
+                pageCount--;
+            }
+            totalLength += length - previousLength;
+        }
+
+        synchronized SiteStatistics statistics() {
+            return new SiteStatistics(pageCount, pageCount == 0 ? 0 : (double) totalLength / pageCount);
+        }
+    }
+
+    private record Term(String lemma, Postings postings) {
+    }
+
+    /**
+     * Страницы пересечения с оценками без учёта позиций, ожидающие чтения позиций.
+     */
+    private static class Candidates {
+        private int[] pageIds = new int[16];
+        private float[] ranks = new float[16];
+        private int size;
+
+        void add(int pageId, float rank) {
+            if (size == pageIds.length) {
+                pageIds = Arrays.copyOf(pageIds, size * 2);
+                ranks = Arrays.copyOf(ranks, size * 2);
+            }
+            pageIds[size] = pageId;
+            ranks[size] = rank;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        int pageId(int index) {
+            return pageIds[index];
+        }
+
+        float rank(int index) {
+            return ranks[index];
+        }
+
+        /**
+         * Номера страниц по убыванию оценки, при равной оценке — по возрастанию id.
+         */
+        int[] orderByRankDescending() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> ranks[a] != ranks[b]
+                    ? Float.compare(ranks[b], ranks[a]) : Integer.compare(pageIds[a], pageIds[b]));
+            int[] sorted = new int[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = order[i];
+            }
+            return sorted;
+        }
+    }
+
+    /**
+     * Списки страниц лемм запроса с моделями их вкладов и курсорами пересечения.
+     */
+    private static class Evaluation {
+        private final List<Term> terms;
+        private LemmaScorer[] scorers;
+        private final int[] cursors;
+
+        Evaluation(List<Term> terms, ScoringModel scoringModel, SiteStatistics siteStatistics) {
+            this.terms = new ArrayList<>(terms);
+            this.scorers = new LemmaScorer[terms.size()];
+            this.cursors = new int[terms.size()];
+            for (int j = 0; j < terms.size(); j++) {
+                scorers[j] = scoringModel.forLemma(siteStatistics, terms.get(j).postings().size());
+            }
+        }
+
+        int advance(int term, int pageId) {
+            cursors[term] = terms.get(term).postings().advance(cursors[term], pageId);
+            return cursors[term];
+        }
+
+        void sortByMaxScoreDescending() {
+            Integer[] order = new Integer[terms.size()];
+            for (int j = 0; j < order.length; j++) {
+                order[j] = j;
+            }
+            Arrays.sort(order, (a, b) -> Float.compare(maxScore(b), maxScore(a)));
+            List<Term> sortedTerms = new ArrayList<>(order.length);
+            LemmaScorer[] sortedScorers = new LemmaScorer[order.length];
+            for (int j = 0; j < order.length; j++) {
+                sortedTerms.add(terms.get(order[j]));
+                sortedScorers[j] = scorers[order[j]];
+            }
+            terms.clear();
+            terms.addAll(sortedTerms);
+            scorers = sortedScorers;
+        }
+
+        /**
+         * Суммы верхних границ вкладов списков с j-го до последнего; последний элемент — 0.
+         */
+        float[] remainingMaxScores() {
+            float[] remaining = new float[terms.size() + 1];
+            for (int j = terms.size() - 1; j >= 0; j--) {
+                remaining[j] = remaining[j + 1] + maxScore(j);
+            }
+            return remaining;
+        }
+
+        private float maxScore(int term) {
+            return scorers[term].maxScore(terms.get(term).postings().maxRank());
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package searchengine.services.search;
+
+import searchengine.services.helper.LemmaPositions;
+import searchengine.services.search.SearchQuery.Phrase;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Проверка фраз и близости лемм на странице по порядковым номерам слов из позиций лемм.
+ * Страницы, проиндексированные без позиций, проверить нельзя: фразы на них считаются найденными.
+ */
+final class PositionalMatcher {
+
+    private PositionalMatcher() {
+    }
+
+    static boolean matchesPhrases(List<Phrase> phrases, Map<String, byte[]> pagePositions) {
+        for (Phrase phrase : phrases) {
+            if (!matchesPhrase(phrase, pagePositions)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Слова фразы должны стоять подряд; служебное слово фразы совпадает с любым словом.
+     * Перебираются вхождения самого редкого слова, остальные ищутся двоичным поиском.
+     */
+    static boolean matchesPhrase(Phrase phrase, Map<String, byte[]> pagePositions) {
+        List<Set<String>> words = phrase.words();
+        int[][] ordinals = new int[words.size()][];
+        int anchor = -1;
+        for (int i = 0; i < words.size(); i++) {
+            if (words.get(i).isEmpty()) {
+                continue;
+            }
+            int[] wordOrdinals = new int[0];
+            for (String lemma : words.get(i)) {
+                byte[] positions = pagePositions.get(lemma);
+                if (positions == null) {
+                    return true;
+                }
+                wordOrdinals = union(wordOrdinals, LemmaPositions.ordinals(positions));
+            }
+            ordinals[i] = wordOrdinals;
+            if (anchor == -1 || wordOrdinals.length < ordinals[anchor].length) {
+                anchor = i;
+            }
+        }
+        if (anchor == -1) {
+            return true;
+        }
+        candidates:
+        for (int ordinal : ordinals[anchor]) {
+            int phraseStart = ordinal - anchor;
+            if (phraseStart < 0) {
+                continue;
+            }
+            for (int i = 0; i < ordinals.length; i++) {
+                if (i != anchor && ordinals[i] != null && Arrays.binarySearch(ordinals[i], phraseStart + i) < 0) {
+                    continue candidates;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Близость лемм: 1, если все они стоят подряд, и (n - 1) / w для наименьшего окна
+     * из w + 1 слов, содержащего каждую из n лемм. 0 — если на странице меньше двух лемм с позициями.
+     */
+    static float proximity(byte[][] termPositions, int count) {
+        int[][] ordinals = new int[count][];
+        int terms = 0;
+        for (int j = 0; j < count; j++) {
+            if (termPositions[j] == null) {
+                continue;
+            }
+            int[] termOrdinals = LemmaPositions.ordinals(termPositions[j]);
+            if (termOrdinals.length > 0) {
+                ordinals[terms++] = termOrdinals;
+            }
+        }
+        if (terms < 2) {
+            return 0;
+        }
+        int[] cursors = new int[terms];
+        int bestWindow = Integer.MAX_VALUE;
+        while (true) {
+            int minTerm = 0;
+            int max = Integer.MIN_VALUE;
+            for (int j = 0; j < terms; j++) {
+                int ordinal = ordinals[j][cursors[j]];
+                if (ordinal < ordinals[minTerm][cursors[minTerm]]) {
+                    minTerm = j;
+                }
+                max = Math.max(max, ordinal);
+            }
+            bestWindow = Math.min(bestWindow, max - ordinals[minTerm][cursors[minTerm]]);
+            if (++cursors[minTerm] == ordinals[minTerm].length) {
+                break;
+            }
+        }
+        int idealWindow = terms - 1;
+        return bestWindow <= idealWindow ? 1 : (float) idealWindow / bestWindow;
+    }
+
+    private static int[] union(int[] first, int[] second) {
+        if (first.length == 0) {
+            return second;
+        }
+        int[] union = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, union, first.length, second.length);
+        Arrays.sort(union);
+        return union;
+    }
+}
@@ -0,0 +1,98 @@
+package searchengine.services.search;
+
+import java.util.Arrays;
+
+/**
+ * Список страниц одной леммы, отсортированный по id страницы, с rank в параллельном массиве.
+ * Позиции лемм в памяти не хранятся: они читаются из таблицы index только для проверяемых страниц.
+ * Запись идёт под блокировкой, чтение — без неё: читатель берёт неизменяемый снимок {@link Postings}.
+ * Добавление в конец не копирует массивы: элементы за пределами size снимка читателям не видны.
+ * Замена rank уже добавленной страницы копирует массив, чтобы выданные снимки не менялись.
+ */
+public class PostingList {
+    private volatile Postings postings;
+
+    public PostingList() {
+        this(Postings.EMPTY);
+    }
+
+    public PostingList(Postings postings) {
+        this.postings = postings;
+    }
+
+    public Postings snapshot() {
+        return postings;
+    }
+
+    public synchronized void put(int pageId, float rank) {
+        Postings current = postings;
+        int size = current.size();
+        int position = current.advance(0, pageId);
+        float maxRank = Math.max(current.maxRank(), rank);
+        if (position < size && current.pageIds()[position] == pageId) {
+            float[] newRanks = Arrays.copyOf(current.ranks(), current.ranks().length);
+            newRanks[position] = rank;
+            postings = new Postings(current.pageIds(), newRanks, size, maxRank);
+            return;
+        }
+        int[] pageIds = current.pageIds();
+        float[] ranks = current.ranks();
+        if (position == size && size < pageIds.length) {
+            pageIds[size] = pageId;
+            ranks[size] = rank;
+            postings = new Postings(pageIds, ranks, size + 1, maxRank);
+            return;
+        }
+        int capacity = size < pageIds.length ? pageIds.length : Math.max(4, size + (size >> 1));
+        int[] newPageIds = new int[capacity];
+        float[] newRanks = new float[capacity];
+        System.arraycopy(pageIds, 0, newPageIds, 0, position);
+        System.arraycopy(ranks, 0, newRanks, 0, position);
+        newPageIds[position] = pageId;
+        newRanks[position] = rank;
+        System.arraycopy(pageIds, position, newPageIds, position + 1, size - position);
+        System.arraycopy(ranks, position, newRanks, position + 1, size - position);
+        postings = new Postings(newPageIds, newRanks, size + 1, maxRank);
+    }
+
+    public synchronized boolean remove(int pageId) {
+        Postings current = postings;
+        int size = current.size();
+        int position = current.advance(0, pageId);
+        if (position == size || current.pageIds()[position] != pageId) {
+            return false;
+        }
+        int[] newPageIds = Arrays.copyOf(current.pageIds(), size);
+        float[] newRanks = Arrays.copyOf(current.ranks(), size);
+        System.arraycopy(newPageIds, position + 1, newPageIds, position, size - position - 1);
+        System.arraycopy(newRanks, position + 1, newRanks, position, size - position - 1);
+        postings = new Postings(newPageIds, newRanks, size - 1, current.maxRank());
+        return true;
+    }
+
+    /**
+     * maxRank — верхняя граница rank в списке: после удаления страниц не уменьшается.
+     */
+    public record Postings(int[] pageIds, float[] ranks, int size, float maxRank) {
+        static final Postings EMPTY = new Postings(new int[0], new float[0], 0, 0);
+
+        /**
+         * Позиция первой страницы с id не меньше pageId, начиная с from (экспоненциальный поиск).
+         */
+        public int advance(int from, int pageId) {
+            if (from >= size || pageIds[from] >= pageId) {
+                return from;
+            }
+            int step = 1;
+            int low = from;
+            int high = from + step;
+            while (high < size && pageIds[high] < pageId) {
+                low = high;
+                step <<= 1;
+                high = from + step;
+            }
+            int index = Arrays.binarySearch(pageIds, low + 1, Math.min(high, size - 1) + 1, pageId);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+}
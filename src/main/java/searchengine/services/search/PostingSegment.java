@@ -0,0 +1,161 @@
+package searchengine.services.search;
+
+import searchengine.services.search.PostingList.Postings;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * Неизменяемый файл со списками страниц всех лемм одного сайта.
+ * <p>
+ * Формат: заголовок (сигнатура, версия, id сайта, отметка {@link SegmentStamp} и число лемм), затем для каждой
+ * леммы — её UTF-8 байты, число страниц и maxRank, затем страницы: разность id с предыдущей страницей
+ * и rank. Все числа, кроме заголовка и maxRank, — varint: id соседних страниц близки, и список занимает
+ * 2–3 байта на страницу против строки таблицы index с собственным id и двумя внешними ключами.
+ * rank — число вхождений леммы на странице, целое, и хранится точно, чтобы оценки сайта, загруженного
+ * из файла, совпадали с оценками сайта, загруженного из таблицы index (версия 2 округляла его до сотых).
+ * Позиции лемм остаются в таблице index (версия 1 хранила их здесь).
+ * Файл читается через {@link MappedByteBuffer} без промежуточного буфера в куче.
+ */
+public final class PostingSegment {
+    private static final int MAGIC = 0x50534547;
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 28;
+
+    private PostingSegment() {
+    }
+
+    public interface SegmentHandler {
+        void onPostings(String lemma, Postings postings);
+    }
+
+    /**
+     * Отметка состояния страниц сайта в MySQL на момент записи файла: если она не совпадает с текущей,
+     * файл устарел и сайт загружается из таблицы index.
+     */
+    public record SegmentStamp(long pageCount, int maxPageId) {
+    }
+
+    /**
+     * Пишет списки страниц сайта и возвращает размер файла в байтах. Если rank какой-то страницы
+     * не целый, файл не пишется: такой сайт и дальше загружается из таблицы index.
+     */
+    public static long write(Path file, int siteId, SegmentStamp stamp, Map<String, Postings> lemmas)
+            throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(siteId);
+            out.writeLong(stamp.pageCount());
+            out.writeInt(stamp.maxPageId());
+            out.writeInt(lemmas.size());
+            for (Map.Entry<String, Postings> lemma : lemmas.entrySet()) {
+                byte[] lemmaBytes = lemma.getKey().getBytes(StandardCharsets.UTF_8);
+                writeVarint(out, lemmaBytes.length);
+                out.write(lemmaBytes);
+                Postings postings = lemma.getValue();
+                writeVarint(out, postings.size());
+                out.writeFloat(postings.maxRank());
+                int previousPageId = 0;
+                for (int i = 0; i < postings.size(); i++) {
+                    int pageId = postings.pageIds()[i];
+                    writeVarint(out, pageId - previousPageId);
+                    previousPageId = pageId;
+                    writeVarint(out, wholeRank(lemma.getKey(), pageId, postings.ranks()[i]));
+                }
+            }
+            out.flush();
+            return out.size();
+        }
+    }
+
+    /**
+     * Отметка файла или null, если файл не является сегментом этой версии.
+     */
+    public static SegmentStamp readStamp(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                return null;
+            }
+            return new SegmentStamp(header.getLong(12), header.getInt(20));
+        }
+    }
+
+    /**
+     * Читает файл через отображение в память и передаёт handler списки страниц лемм
+     * в порядке записи; возвращает число лемм.
+     */
+    public static int read(Path file, SegmentHandler handler) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a posting segment: " + file);
+        }
+        buffer.getInt();
+        buffer.getLong();
+        buffer.getInt();
+        int lemmaCount = buffer.getInt();
+        for (int l = 0; l < lemmaCount; l++) {
+            byte[] lemmaBytes = new byte[readVarint(buffer)];
+            buffer.get(lemmaBytes);
+            int size = readVarint(buffer);
+            float maxRank = buffer.getFloat();
+            int[] pageIds = new int[size];
+            float[] ranks = new float[size];
+            int pageId = 0;
+            for (int i = 0; i < size; i++) {
+                pageId += readVarint(buffer);
+                pageIds[i] = pageId;
+                ranks[i] = readVarint(buffer);
+            }
+            handler.onPostings(new String(lemmaBytes, StandardCharsets.UTF_8),
+                    new Postings(pageIds, ranks, size, maxRank));
+        }
+        return lemmaCount;
+    }
+
+    private static int wholeRank(String lemma, int pageId, float rank) throws IOException {
+        int wholeRank = (int) rank;
+        if (wholeRank != rank || wholeRank < 0) {
+            throw new IOException("Rank " + rank + " of lemma " + lemma + " on page " + pageId
+                    + " is not a non-negative whole number");
+        }
+        return wholeRank;
+    }
+
+    private static void writeVarint(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
@@ -0,0 +1,30 @@
+package searchengine.services.search;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Прежняя модель: сумма rank (числа вхождений) лемм запроса на странице.
+ */
+@Component
+public class RankSumScoring implements ScoringModel {
+
+    @Override
+    public String getName() {
+        return "rank";
+    }
+
+    @Override
+    public LemmaScorer forLemma(SiteStatistics siteStatistics, int documentFrequency) {
+        return new LemmaScorer() {
+            @Override
+            public float score(float termFrequency, int pageLength) {
+                return termFrequency;
+            }
+
+            @Override
+            public float maxScore(float maxTermFrequency) {
+                return maxTermFrequency;
+            }
+        };
+    }
+}
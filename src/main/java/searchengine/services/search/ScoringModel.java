@@ -0,0 +1,31 @@
+package searchengine.services.search;
+
+/**
+ * Модель релевантности. Оценка страницы — сумма вкладов лемм запроса, вклад леммы считается
+ * по её частоте на странице, длине страницы и статистике сайта без обращения к базе.
+ */
+public interface ScoringModel {
+    String getName();
+
+    /**
+     * @param documentFrequency число страниц сайта с леммой
+     */
+    LemmaScorer forLemma(SiteStatistics siteStatistics, int documentFrequency);
+
+    interface LemmaScorer {
+        float score(float termFrequency, int pageLength);
+
+        /**
+         * Наибольший возможный вклад леммы при частоте не выше maxTermFrequency — для отсечения страниц,
+         * которые не могут попасть в лучшие.
+         */
+        float maxScore(float maxTermFrequency);
+    }
+
+    /**
+     * Число проиндексированных страниц сайта и их средняя длина в леммах.
+     */
+    record SiteStatistics(int pageCount, double averagePageLength) {
+        public static final SiteStatistics EMPTY = new SiteStatistics(0, 0);
+    }
+}
@@ -0,0 +1,66 @@
+package searchengine.services.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Результат ранжирования: лучшие страницы по убыванию rank, общее число найденных страниц
+ * и максимальный rank, относительно которого считается релевантность.
+ */
+public record SearchHits(List<ScoredPage> top, int total, float maxRank) {
+    public static final SearchHits EMPTY = new SearchHits(List.of(), 0, 0);
+
+    /**
+     * Страница выдачи: не больше limit страниц начиная с offset. В top может быть больше страниц,
+     * чем запрошено, — при промахе кэша ранжируется запас для следующих страниц выдачи.
+     */
+    public List<ScoredPage> window(int offset, int limit) {
+        int from = Math.min(offset, top.size());
+        return top.subList(from, from + Math.max(0, Math.min(limit, top.size() - from)));
+    }
+
+    public float relevance(ScoredPage page) {
+        return maxRank == 0 ? 0 : page.rank() / maxRank;
+    }
+
+    /**
+     * Слияние отсортированных списков лучших страниц сайтов в k лучших по всем сайтам:
+     * куча хранит по одному текущему элементу каждого списка.
+     */
+    public static SearchHits merge(List<SearchHits> perSite, int k) {
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, perSite.size()),
+                (a, b) -> ScoredPage.BEST_FIRST.compare(perSite.get(a[0]).top().get(a[1]),
+                        perSite.get(b[0]).top().get(b[1])));
+        int total = 0;
+        float maxRank = 0;
+        for (int i = 0; i < perSite.size(); i++) {
+            SearchHits hits = perSite.get(i);
+            total += hits.total();
+            maxRank = Math.max(maxRank, hits.maxRank());
+            if (!hits.top().isEmpty()) {
+                heads.add(new int[]{i, 0});
+            }
+        }
+        List<ScoredPage> top = new ArrayList<>(Math.min(k, total));
+        while (top.size() < k && !heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<ScoredPage> list = perSite.get(head[0]).top();
+            top.add(list.get(head[1]));
+            if (++head[1] < list.size()) {
+                heads.add(head);
+            }
+        }
+        return new SearchHits(List.copyOf(top), total, maxRank);
+    }
+
+    /**
+     * При равном rank выше стоит страница с меньшим id, чтобы порядок не менялся между запросами.
+     */
+    public record ScoredPage(int pageId, float rank) {
+        public static final Comparator<ScoredPage> BEST_FIRST = Comparator
+                .comparingDouble(ScoredPage::rank).reversed()
+                .thenComparingInt(ScoredPage::pageId);
+    }
+}
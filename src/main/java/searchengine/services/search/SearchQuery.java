@@ -0,0 +1,24 @@
+package searchengine.services.search;
+
+import java.util.*;
+
+/**
+ * Разобранный поисковый запрос: все леммы запроса и фразы, заданные в кавычках.
+ * Фраза — последовательность слов, каждое слово — множество его лемм; у служебного слова
+ * лемм нет, и на его месте во фразе может стоять любое слово.
+ */
+public record SearchQuery(Set<String> lemmas, List<Phrase> phrases) {
+
+    public Set<String> phraseLemmas() {
+        Set<String> phraseLemmas = new HashSet<>();
+        for (Phrase phrase : phrases) {
+            for (Set<String> word : phrase.words()) {
+                phraseLemmas.addAll(word);
+            }
+        }
+        return phraseLemmas;
+    }
+
+    public record Phrase(List<Set<String>> words) {
+    }
+}
@@ -0,0 +1,124 @@
+package searchengine.services.search;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.services.search.SearchQuery.Phrase;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кэш ранжированных результатов поиска по набору лемм запроса и сайту.
+ * Хранит только id страниц и rank, сниппеты строятся заново для запрошенного окна.
+ * Запись действительна, пока не изменилось поколение индекса, с которым она посчитана.
+ */
+@Component
+public class SearchResultCache {
+    /**
+     * Столько лучших страниц ранжируется при промахе, чтобы следующие страницы выдачи брались из кэша.
+     */
+    private static final int MIN_CACHED_HITS = 100;
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Map<QueryKey, CachedHits> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public SearchResultCache(SearchSettings searchSettings, MeterRegistry meterRegistry) {
+        this.maxSize = searchSettings.getResultCacheSize();
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(searchSettings.getResultCacheTtlSeconds());
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<QueryKey, CachedHits> eldest) {
+                if (size() > maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        Gauge.builder("search.cache.size", this, SearchResultCache::size).register(meterRegistry);
+        Gauge.builder("search.cache.hit.ratio", this, SearchResultCache::hitRatio).register(meterRegistry);
+        FunctionCounter.builder("search.cache.requests", hits, LongAdder::sum)
+                .tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("search.cache.requests", misses, LongAdder::sum)
+                .tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("search.cache.evictions", evictions, LongAdder::sum).register(meterRegistry);
+    }
+
+    /**
+     * Результат, посчитанный при том же поколении индекса и содержащий не меньше limit лучших страниц,
+     * либо null.
+     */
+    public SearchHits get(QueryKey key, long generation, int limit) {
+        if (maxSize <= 0) {
+            return null;
+        }
+        CachedHits cached;
+        synchronized (entries) {
+            cached = entries.get(key);
+            if (cached != null && (cached.generation() != generation || isExpired(cached))) {
+                entries.remove(key);
+                cached = null;
+            }
+        }
+        SearchHits searchHits = cached == null ? null : cached.hits();
+        if (searchHits == null || (searchHits.top().size() < limit && searchHits.top().size() < searchHits.total())) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return searchHits;
+    }
+
+    public void put(QueryKey key, long generation, SearchHits searchHits) {
+        if (maxSize <= 0) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(key, new CachedHits(searchHits, generation, System.nanoTime()));
+        }
+    }
+
+    /**
+     * Сколько лучших страниц ранжировать при промахе для окна из limit страниц.
+     */
+    public int depth(int limit) {
+        return maxSize <= 0 ? limit : Math.max(limit, MIN_CACHED_HITS);
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public double hitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    private boolean isExpired(CachedHits cached) {
+        return ttlNanos > 0 && System.nanoTime() - cached.createdAt() > ttlNanos;
+    }
+
+    /**
+     * Ключ запроса: отсортированные различные леммы, фразы запроса, адрес сайта ("" — поиск по всем сайтам)
+     * и модель релевантности.
+     */
+    public record QueryKey(List<String> lemmas, List<Phrase> phrases, String site, String ranking) {
+        public static QueryKey of(SearchQuery query, String site, String ranking) {
+            return new QueryKey(List.copyOf(new TreeSet<>(query.lemmas())), query.phrases(), site, ranking);
+        }
+    }
+
+    private record CachedHits(SearchHits hits, long generation, long createdAt) {
+    }
+}
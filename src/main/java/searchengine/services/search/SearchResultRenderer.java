@@ -0,0 +1,180 @@
+package searchengine.services.search;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.dto.search.PageView;
+import searchengine.dto.search.SearchData;
+import searchengine.services.helper.ConnectToPage;
+import searchengine.services.helper.LemmaPositions;
+import searchengine.services.helper.Lemmatizer;
+import searchengine.services.search.SearchHits.ScoredPage;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Представление результатов поиска: заголовок и сниппет строятся только для страниц возвращаемого окна
+ * по тексту, сохранённому при индексации; HTML разбирается лишь у страниц, проиндексированных без него.
+ * Сниппеты страниц окна могут строиться параллельно.
+ */
+@Component
+public class SearchResultRenderer {
+    private static final int MAX_SNIPPET_LENGTH = 400;
+    private static final int FRAGMENT_LENGTH = 150;
+
+    private final Lemmatizer lemmatizer;
+    private final ConnectToPage connectToPage;
+    private final ExecutorService snippetExecutor;
+
+    public SearchResultRenderer(Lemmatizer lemmatizer, ConnectToPage connectToPage, SearchSettings searchSettings) {
+        this.lemmatizer = lemmatizer;
+        this.connectToPage = connectToPage;
+        int snippetThreads = searchSettings.getSnippetThreads();
+        this.snippetExecutor = snippetThreads <= 0 ? null : Executors.newFixedThreadPool(snippetThreads,
+                new ThreadFactory() {
+                    private final AtomicInteger counter = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "search-snippet-" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (snippetExecutor != null) {
+            snippetExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param positions позиции лемм запроса на страницах окна; для страниц без позиций
+     *                  вхождения ищутся повторной лемматизацией текста
+     */
+    public List<SearchData> render(SearchHits hits, List<ScoredPage> window, Map<Integer, PageView> pages,
+                                   Map<Integer, Map<String, byte[]>> positions,
+                                   List<String> lemmasFromQuery, int countWordsRequest) {
+        List<CompletableFuture<SearchData>> results = new ArrayList<>(window.size());
+        for (ScoredPage scoredPage : window) {
+            PageView pageView = pages.get(scoredPage.pageId());
+            if (pageView == null) {
+                continue;
+            }
+            float absRelevance = hits.relevance(scoredPage);
+            Map<String, byte[]> pagePositions = positions.get(scoredPage.pageId());
+            Supplier<SearchData> renderTask = () -> {
+                String title = pageView.title() != null
+                        ? pageView.title() : connectToPage.getTitleFromHtml(pageView.content());
+                String clearContent = pageView.plainText() != null
+                        ? pageView.plainText() : lemmatizer.stripHtmlTags(pageView.content());
+                List<Integer> lemmaIndexes = locateLemmas(clearContent, pagePositions, lemmasFromQuery);
+                String snippet = createSnippetFromContent(clearContent, lemmaIndexes, countWordsRequest);
+                if (snippet.isEmpty() && pageView.headings() != null) {
+                    snippet = pageView.headings().substring(0, Math.min(pageView.headings().length(), MAX_SNIPPET_LENGTH));
+                }
+                return new SearchData(pageView.siteUrl(), pageView.siteName(), pageView.path(), title, snippet,
+                        absRelevance);
+            };
+            results.add(snippetExecutor == null || window.size() == 1
+                    ? CompletableFuture.completedFuture(renderTask.get())
+                    : CompletableFuture.supplyAsync(renderTask, snippetExecutor));
+        }
+        List<SearchData> searchData = new ArrayList<>(results.size());
+        for (CompletableFuture<SearchData> result : results) {
+            try {
+                searchData.add(result.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        return searchData;
+    }
+
+    private List<Integer> locateLemmas(String content, Map<String, byte[]> pagePositions, List<String> lemmasFromQuery) {
+        if (pagePositions == null || pagePositions.isEmpty()) {
+            return lemmatizer.locateLemmasInText(content, lemmasFromQuery);
+        }
+        TreeSet<Integer> offsets = new TreeSet<>();
+        for (String lemma : new HashSet<>(lemmasFromQuery)) {
+            byte[] positions = pagePositions.get(lemma);
+            if (positions == null) {
+                continue;
+            }
+            for (int offset : LemmaPositions.offsets(positions)) {
+                if (offset < content.length()) {
+                    offsets.add(offset);
+                }
+            }
+        }
+        return new ArrayList<>(offsets);
+    }
+
+    private String createSnippetFromContent(String content, List<Integer> lemmaIndexes, int countWordsRequest) {
+        List<String> highlightedWords = getHighlightedFragmentsByLemmaIndices(content, lemmaIndexes, countWordsRequest);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < highlightedWords.size() && result.length() < MAX_SNIPPET_LENGTH; i++) {
+            String word = highlightedWords.get(i);
+            if (result.length() + word.length() < MAX_SNIPPET_LENGTH) {
+                result.append(word).append("... ");
+            } else {
+                break;
+            }
+        }
+        return result.toString();
+    }
+
+    private List<String> getHighlightedFragmentsByLemmaIndices(String content, List<Integer> lemmaIndexes,
+                                                               int countWordsRequest) {
+        List<String> highlightedLemmaFragments = new ArrayList<>();
+        for (int i = 0; i < lemmaIndexes.size(); i++) {
+            int lemmaStartIndex = lemmaIndexes.get(i);
+            int lemmaEndIndex = wordEnd(content, lemmaStartIndex);
+            int nextLemmaIndex = i + 1;
+            while (nextLemmaIndex < lemmaIndexes.size() && lemmaIndexes.get(nextLemmaIndex) - lemmaEndIndex > 0 &&
+                    lemmaIndexes.get(nextLemmaIndex) - lemmaEndIndex < countWordsRequest) {
+                lemmaEndIndex = wordEnd(content, lemmaIndexes.get(nextLemmaIndex));
+                nextLemmaIndex += 1;
+            }
+            i = nextLemmaIndex - 1;
+            String highlightedLemmaFragment = getHighlightedWordInFragment(lemmaStartIndex, lemmaEndIndex, content);
+            highlightedLemmaFragments.add(highlightedLemmaFragment);
+        }
+        highlightedLemmaFragments.sort(Comparator.comparingInt(String::length).reversed());
+        return highlightedLemmaFragments;
+    }
+
+    private String getHighlightedWordInFragment(int lemmaStartIndex, int lemmaEndIndex, String content) {
+        String word = content.substring(lemmaStartIndex, lemmaEndIndex);
+        int fragmentStartIndex = content.lastIndexOf(" ", lemmaStartIndex) != -1
+                ? content.lastIndexOf(" ", lemmaStartIndex) : lemmaStartIndex;
+        int fragmentEndIndex = content.indexOf(" ", lemmaEndIndex + FRAGMENT_LENGTH) != -1
+                ? content.indexOf(" ", lemmaEndIndex + FRAGMENT_LENGTH) : wordEnd(content, lemmaEndIndex);
+        String text = content.substring(fragmentStartIndex, fragmentEndIndex);
+        // Экранирование специальных символов в переменной word
+        String quotedWord = Pattern.quote(word);
+        text = text.replaceAll(quotedWord, "<b>" + word + "</b>");
+        return text;
+    }
+
+    /**
+     * Конец слова, начинающегося с from: ближайший пробел или конец текста.
+     */
+    private static int wordEnd(String content, int from) {
+        int end = content.indexOf(" ", from);
+        return end == -1 ? content.length() : end;
+    }
+}
@@ -1,14 +1,12 @@
 package searchengine.services.search;
 
 import org.springframework.http.ResponseEntity;
-import searchengine.dto.search.SearchData;
-
-import java.util.List;
 
 public interface SearchService {
-    ResponseEntity<Object> searchByQueryAndUrlWithPagination(String query, String site, int offset, int limit);
+    ResponseEntity<Object> searchByQueryAndUrlWithPagination(String query, String site, int offset, int limit,
+                                                             String ranking);
 
-    List<SearchData> searchOnAllSites(List<String> lemmasFromQuery);
+    SearchHits searchOnAllSites(SearchQuery searchQuery, int limit, ScoringModel scoringModel);
 
-    List<SearchData> searchOnOnePage(List<String> lemmasFromQuery, String url);
+    SearchHits searchOnOnePage(SearchQuery searchQuery, String url, int limit, ScoringModel scoringModel);
 }
\ No newline at end of file
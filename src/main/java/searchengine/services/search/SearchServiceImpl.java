@@ -6,25 +6,26 @@ import org.apache.commons.lang3.StringEscapeUtils;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import searchengine.config.SearchSettings;
+import searchengine.dto.search.PageView;
 import searchengine.dto.search.SearchData;
 import searchengine.dto.search.SearchResponse;
 import searchengine.exceptions.EmptyQueryException;
 import searchengine.exceptions.SearchDataNotFoundException;
 import searchengine.exceptions.SiteUrlNotAllowedException;
-import searchengine.model.IndexEntity;
-import searchengine.model.LemmaEntity;
+import searchengine.exceptions.UnknownRankingException;
 import searchengine.model.PageEntity;
 import searchengine.model.SiteEntity;
-import searchengine.repository.IndexRepository;
-import searchengine.repository.LemmaRepository;
 import searchengine.repository.PageRepository;
 import searchengine.repository.SiteRepository;
-import searchengine.services.helper.ConnectToPage;
 import searchengine.services.helper.Lemmatizer;
+import searchengine.services.helper.PageContentStore;
+import searchengine.services.helper.RussianWordTokenizer;
+import searchengine.services.search.SearchHits.ScoredPage;
+import searchengine.services.search.SearchQuery.Phrase;
+import searchengine.services.search.SearchResultCache.QueryKey;
 
 import java.util.*;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -33,202 +34,147 @@ public class SearchServiceImpl implements SearchService {
 
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
-    private final IndexRepository indexRepository;
+    private final InvertedIndex invertedIndex;
+    private final SearchResultCache searchResultCache;
     private final Lemmatizer lemmatizer;
-    private final ConnectToPage connectToPage;
-    private int countWordsRequest;
-    private static final int MAX_SNIPPET_LENGTH = 400;
-    private static final int FRAGMENT_LENGTH = 150;
-    private List<SearchData> searchResults = new ArrayList<>();
-    private int resultCount;
+    private final PageContentStore pageContentStore;
+    private final SearchResultRenderer searchResultRenderer;
+    private final SiteSearchExecutor siteSearchExecutor;
+    private final List<ScoringModel> scoringModels;
+    private final SearchSettings searchSettings;
 
     @Override
-    public ResponseEntity<Object> searchByQueryAndUrlWithPagination(String query, String url, int offset, int limit) {
+    public ResponseEntity<Object> searchByQueryAndUrlWithPagination(String query, String url, int offset, int limit,
+                                                                    String ranking) {
         if (query.isEmpty()) {
             throw new EmptyQueryException("Задан пустой поисковый запрос");
         } else {
-            List<String> lemmasFromQuery = convertQueryToLemmas(query);
+            ScoringModel scoringModel = findScoringModel(ranking.isEmpty() ? searchSettings.getRanking() : ranking);
+            SearchQuery searchQuery = parseQuery(query);
             String[] words = query.split("\\s+");
-            countWordsRequest = words.length;
-            if (offset == 0) {
-                searchResults.clear();
-            }
-            performPageSearch(url, lemmasFromQuery);
-            List<SearchData> searchDataSublist = searchResults.subList(offset, Math.min(offset + limit, searchResults.size()));
-            return new ResponseEntity<>(new SearchResponse(true, resultCount, searchDataSublist), HttpStatus.OK);
+            SearchHits hits = determineSearchScope(url, searchQuery, offset + limit, scoringModel);
+            List<SearchData> searchData = createSearchDataList(hits, hits.window(offset, limit),
+                    List.copyOf(searchQuery.lemmas()), words.length);
+            return new ResponseEntity<>(new SearchResponse(true, hits.total(), searchData), HttpStatus.OK);
         }
     }
 
-    private void performPageSearch(String url, List<String> lemmasFromQuery) {
-        if (searchResults.isEmpty()) {
-            List<SearchData> resultSearchData = determineSearchScope(url, lemmasFromQuery);
-            searchResults = resultSearchData;
-            resultCount = resultSearchData.size();
+    private ScoringModel findScoringModel(String ranking) {
+        for (ScoringModel scoringModel : scoringModels) {
+            if (scoringModel.getName().equals(ranking)) {
+                return scoringModel;
+            }
         }
+        throw new UnknownRankingException("Неизвестный способ ранжирования: " + ranking);
     }
 
-    private List<SearchData> determineSearchScope(String url, List<String> lemmasFromQuery) {
-        List<SearchData> searchData;
+    private SearchHits determineSearchScope(String url, SearchQuery searchQuery, int limit,
+                                            ScoringModel scoringModel) {
+        long generation;
         if (!url.isEmpty()) {
-            if (siteRepository.findByUrl(url) == null) {
+            Integer siteId = siteRepository.findIdByUrl(url);
+            if (siteId == null) {
                 throw new SiteUrlNotAllowedException("Указанная страница не найдена");
-            } else {
-                searchData = searchOnOnePage(lemmasFromQuery, url);
             }
+            generation = invertedIndex.generation(siteId);
         } else {
-            searchData = searchOnAllSites(lemmasFromQuery);
+            generation = invertedIndex.generation();
+        }
+        QueryKey queryKey = QueryKey.of(searchQuery, url, scoringModel.getName());
+        SearchHits searchHits = searchResultCache.get(queryKey, generation, limit);
+        if (searchHits != null) {
+            return searchHits;
         }
-        if (searchData == null) {
+        int depth = searchResultCache.depth(limit);
+        searchHits = url.isEmpty()
+                ? searchOnAllSites(searchQuery, depth, scoringModel)
+                : searchOnOnePage(searchQuery, url, depth, scoringModel);
+        if (searchHits == null) {
             throw new SearchDataNotFoundException("NOT_FOUND");
         }
-        return searchData;
+        searchResultCache.put(queryKey, generation, searchHits);
+        return searchHits;
     }
 
     @Override
-    public List<SearchData> searchOnAllSites(List<String> lemmasFromQuery) {
-        List<SiteEntity> sites = siteRepository.findAll();
-        List<LemmaEntity> sortedLemmasPerSite = new ArrayList<>();
-        for (SiteEntity siteEntity : sites) {
-            sortedLemmasPerSite.addAll(getLemmasFromSiteSortedByFrequency(lemmasFromQuery, siteEntity));
-        }
-        List<SearchData> searchData = null;
-        for (LemmaEntity lemmaEntity : sortedLemmasPerSite) {
-            if (lemmasFromQuery.contains(lemmaEntity.getLemma())) {
-                searchData = new ArrayList<>(createSearchDataListFromLemmas(sortedLemmasPerSite, lemmasFromQuery));
-                searchData.sort((o1, o2) -> Float.compare(o2.getRelevance(), o1.getRelevance()));
-            }
-        }
-        return searchData;
+    public SearchHits searchOnAllSites(SearchQuery searchQuery, int limit, ScoringModel scoringModel) {
+        List<SearchHits> perSite = siteSearchExecutor.searchAll(siteRepository.findAllIds(),
+                siteId -> searchOnSite(siteId, searchQuery, limit, scoringModel));
+        List<SearchHits> found = perSite.stream().filter(Objects::nonNull).toList();
+        return found.isEmpty() ? null : SearchHits.merge(found, limit);
     }
 
     @Override
-    public List<SearchData> searchOnOnePage(List<String> lemmasFromQuery, String url) {
-        SiteEntity siteEntity = siteRepository.findByUrl(url);
-        List<LemmaEntity> lemmasFromSite = getLemmasFromSiteSortedByFrequency(lemmasFromQuery, siteEntity);
-        return createSearchDataListFromLemmas(lemmasFromSite, lemmasFromQuery);
+    public SearchHits searchOnOnePage(SearchQuery searchQuery, String url, int limit, ScoringModel scoringModel) {
+        Integer siteId = siteRepository.findIdByUrl(url);
+        SearchHits searchHits = searchOnSite(siteId, searchQuery, limit, scoringModel);
+        return searchHits == null ? SearchHits.EMPTY : searchHits;
     }
 
-    private List<String> convertQueryToLemmas(String query) {
-        log.info("Get query into lemma");
-        query = lemmatizer.normalizeText(query);
-        String[] words = query.toLowerCase(Locale.ROOT).split(" ");
-        List<String> lemmaList = new ArrayList<>();
-        for (String word : words) {
-            List<String> lemma = lemmatizer.getLemmaList(word);
-            lemmaList.addAll(lemma);
+    /**
+     * Лучшие страницы одного сайта; null, если на сайте нет ни одной леммы запроса.
+     */
+    private SearchHits searchOnSite(int siteId, SearchQuery searchQuery, int limit, ScoringModel scoringModel) {
+        log.info("Search lemmas on site: {}", siteId);
+        if (searchQuery.lemmas().stream().noneMatch(lemma -> invertedIndex.frequency(siteId, lemma) > 0)) {
+            return null;
         }
-        return lemmaList;
-    }
-
-    private List<LemmaEntity> getLemmasFromSiteSortedByFrequency(List<String> lemmas, SiteEntity site) {
-        log.info("Get lemmas from site: {}", site.getUrl());
-        ArrayList<LemmaEntity> lemmaList = (ArrayList<LemmaEntity>) lemmaRepository.findLemmasBySite(lemmas, site.getId());
-        lemmaList.sort(Comparator.comparingInt(LemmaEntity::getFrequency));
-        return lemmaList;
-    }
-
-    private List<SearchData> createSearchDataListFromLemmas(List<LemmaEntity> lemmas, List<String> lemmasFromQuery) {
-        List<SearchData> searchDataList = new ArrayList<>();
-        List<Integer> lemmaIds = lemmas.stream().map(LemmaEntity::getId).toList();
-        if (lemmas.size() >= lemmasFromQuery.size()) {
-            List<PageEntity> sortedPageList = pageRepository.findByLemmas(lemmaIds, lemmasFromQuery.size());
-            List<Integer> pageIds = sortedPageList.stream().map(PageEntity::getId).toList();
-            List<IndexEntity> sortedIndexList = indexRepository.findByLemmasAndPages(lemmaIds, pageIds);
-            LinkedHashMap<PageEntity, Float> sortedPagesByAbsRelevance =
-                    getPagesSortedByAbsoluteRelevance(sortedPageList, sortedIndexList);
-            searchDataList = createSearchDataListFromSortedPages(sortedPagesByAbsRelevance, lemmasFromQuery);
-
-            return searchDataList;
-        } else return searchDataList;
+        TopKCollector collector = new TopKCollector(limit);
+        invertedIndex.collectPages(siteId, searchQuery, scoringModel,
+                searchSettings.getCommonLemmaPercent() / 100.0, searchSettings.getProximityWeight(), collector);
+        return collector.result();
     }
 
-    private LinkedHashMap<PageEntity, Float> getPagesSortedByAbsoluteRelevance(List<PageEntity> pages,
-                                                                               List<IndexEntity> indexes) {
-        HashMap<PageEntity, Float> pageToRelevance = new HashMap<>();
-        for (PageEntity page : pages) {
-            float relevant = 0;
-            for (IndexEntity index : indexes) {
-                if (index.getPageId().equals(page)) {
-                    relevant += index.getRank();
-                }
+    /**
+     * Разбирает запрос: текст в двойных кавычках — фраза, слова которой должны стоять на странице подряд.
+     * Непарная кавычка в конце запроса игнорируется, текст после неё ищется как обычные слова.
+     */
+    private SearchQuery parseQuery(String query) {
+        log.info("Get query into lemma");
+        Set<String> lemmas = new LinkedHashSet<>();
+        List<Phrase> phrases = new ArrayList<>();
+        String[] parts = query.split("\"", -1);
+        for (int i = 0; i < parts.length; i++) {
+            boolean phrase = i % 2 == 1 && i < parts.length - 1;
+            List<Set<String>> words = new ArrayList<>();
+            RussianWordTokenizer.tokenize(parts[i], (word, start) -> {
+                List<String> wordLemmas = lemmatizer.getLemmaList(word);
+                lemmas.addAll(wordLemmas);
+                words.add(Set.copyOf(wordLemmas));
+            });
+            if (phrase && words.stream().filter(word -> !word.isEmpty()).count() > 1) {
+                phrases.add(new Phrase(List.copyOf(words)));
             }
-            pageToRelevance.put(page, relevant);
-        }
-        HashMap<PageEntity, Float> pageToAbsRelevance = new HashMap<>();
-        for (PageEntity page : pageToRelevance.keySet()) {
-            float absRelevance = pageToRelevance.get(page) / Collections.max(pageToRelevance.values());
-            pageToAbsRelevance.put(page, absRelevance);
         }
-        return pageToAbsRelevance
-                .entrySet()
-                .stream()
-                .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (e1, e2) -> e1, LinkedHashMap::new));
+        return new SearchQuery(lemmas, List.copyOf(phrases));
     }
 
-    private List<SearchData> createSearchDataListFromSortedPages(LinkedHashMap<PageEntity, Float> sortedPages,
-                                                                 List<String> lemmasFromQuery) {
-        List<SearchData> searchData = new ArrayList<>();
-        for (PageEntity pageEntity : sortedPages.keySet()) {
-            SiteEntity siteEntity = pageEntity.getSites();
-            String site = siteEntity.getUrl();
-            String uri = pageEntity.getPath();
-            String content = pageEntity.getContent();
-            String title = connectToPage.getTitleFromHtml(content);
-            String siteName = siteEntity.getName();
-            Float absRelevance = sortedPages.get(pageEntity);
-            String clearContent = lemmatizer.stripHtmlTags(content);
-            String snippet = createSnippetFromContent(clearContent, lemmasFromQuery);
-            searchData.add(new SearchData(site, siteName, uri, title, snippet, absRelevance));
+    private List<SearchData> createSearchDataList(SearchHits hits, List<ScoredPage> window,
+                                                  List<String> lemmasFromQuery, int countWordsRequest) {
+        if (window.isEmpty()) {
+            return new ArrayList<>();
         }
-        return searchData;
-    }
-
-    private String createSnippetFromContent(String content, List<String> lemmasFromQuery) {
-        List<Integer> lemmaIndexes = lemmatizer.locateLemmasInText(content, lemmasFromQuery);
-        List<String> highlightedWords = getHighlightedFragmentsByLemmaIndices(content, lemmaIndexes);
-        StringBuilder result = new StringBuilder();
-        for (int i = 0; i < highlightedWords.size() && result.length() < MAX_SNIPPET_LENGTH; i++) {
-            String word = highlightedWords.get(i);
-            if (result.length() + word.length() < MAX_SNIPPET_LENGTH) {
-                result.append(word).append("... ");
+        Map<Integer, PageView> pages = new HashMap<>();
+        List<Integer> pagesWithoutText = new ArrayList<>();
+        for (PageView pageView : pageRepository.findViewsByIdIn(window.stream().map(ScoredPage::pageId).toList())) {
+            if (pageView.plainText() == null) {
+                pagesWithoutText.add(pageView.id());
             } else {
-                break;
+                pages.put(pageView.id(), pageView);
             }
         }
-        return result.toString();
-    }
-
-    private List<String> getHighlightedFragmentsByLemmaIndices(String content, List<Integer> lemmaIndexes) {
-        List<String> highlightedLemmaFragments = new ArrayList<>();
-        for (int i = 0; i < lemmaIndexes.size(); i++) {
-            int lemmaStartIndex = lemmaIndexes.get(i);
-            int lemmaEndIndex = content.indexOf(" ", lemmaStartIndex);
-            int nextLemmaIndex = i + 1;
-            while (nextLemmaIndex < lemmaIndexes.size() && lemmaIndexes.get(nextLemmaIndex) - lemmaEndIndex > 0 &&
-                    lemmaIndexes.get(nextLemmaIndex) - lemmaEndIndex < countWordsRequest) {
-                lemmaEndIndex = content.indexOf(" ", lemmaIndexes.get(nextLemmaIndex));
-                nextLemmaIndex += 1;
-            }
-            i = nextLemmaIndex - 1;
-            String highlightedLemmaFragment = getHighlightedWordInFragment(lemmaStartIndex, lemmaEndIndex, content);
-            highlightedLemmaFragments.add(highlightedLemmaFragment);
+        for (PageEntity pageEntity : pageRepository.findAllById(pagesWithoutText)) {
+            SiteEntity siteEntity = pageEntity.getSites();
+            pages.put(pageEntity.getId(), new PageView(pageEntity.getId(), pageEntity.getPath(), null, null, null,
+                    siteEntity.getId(), siteEntity.getUrl(), siteEntity.getName(), pageContentStore.html(pageEntity)));
         }
-        highlightedLemmaFragments.sort(Comparator.comparingInt(String::length).reversed());
-        return highlightedLemmaFragments;
-    }
-
-    private String getHighlightedWordInFragment(int lemmaStartIndex, int lemmaEndIndex, String content) {
-        String word = content.substring(lemmaStartIndex, lemmaEndIndex);
-        int fragmentStartIndex = content.lastIndexOf(" ", lemmaStartIndex) != -1
-                ? content.lastIndexOf(" ", lemmaStartIndex) : lemmaStartIndex;
-        int fragmentEndIndex = content.indexOf(" ", lemmaEndIndex + FRAGMENT_LENGTH) != -1
-                ? content.indexOf(" ", lemmaEndIndex + FRAGMENT_LENGTH) : content.indexOf(" ", lemmaEndIndex);
-        String text = content.substring(fragmentStartIndex, fragmentEndIndex);
-        // Экранирование специальных символов в переменной word
-        String quotedWord = Pattern.quote(word);
-        text = text.replaceAll(quotedWord, "<b>" + word + "</b>");
-        return text;
+        Map<Integer, List<Integer>> sitePages = new HashMap<>();
+        for (PageView pageView : pages.values()) {
+            sitePages.computeIfAbsent(pageView.siteId(), siteId -> new ArrayList<>()).add(pageView.id());
+        }
+        Map<Integer, Map<String, byte[]>> positions = new HashMap<>();
+        sitePages.forEach((siteId, pageIds) ->
+                positions.putAll(invertedIndex.positions(siteId, pageIds, lemmasFromQuery)));
+        return searchResultRenderer.render(hits, window, pages, positions, lemmasFromQuery, countWordsRequest);
     }
 }
@@ -0,0 +1,168 @@
+package searchengine.services.search;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.IndexingSettings;
+import searchengine.services.search.PostingList.Postings;
+import searchengine.services.search.PostingSegment.SegmentHandler;
+import searchengine.services.search.PostingSegment.SegmentStamp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Каталог файлов {@link PostingSegment}, по одному на сайт. Включается настройкой
+ * indexing-settings.posting-store: segments. Файл сайта переписывается целиком в фоновом потоке
+ * из снимка поискового индекса в памяти, куда уже слиты результаты обхода и обновления страниц,
+ * и атомарно заменяет предыдущий. Если несколько записей одного сайта ждут очереди, пишется только последняя.
+ * <p>
+ * Отметка {@link SegmentStamp} не видит замену страницы под прежним id, поэтому любое изменение страниц сайта
+ * в памяти сразу удаляет его файл ({@link #invalidate}), а запись, снимок которой снят до изменения,
+ * отбрасывается. Если процесс остановится до новой записи, сайт при старте загрузится из таблицы index.
+ */
+@Slf4j
+@Component
+public class SegmentStore {
+    private final boolean enabled;
+    private final Path directory;
+    private final ExecutorService writer;
+    private final Map<Integer, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final Set<Integer> segmentsOnDisk = new HashSet<>();
+
+    public SegmentStore(IndexingSettings indexingSettings) {
+        this.enabled = "segments".equals(indexingSettings.getPostingStore());
+        this.directory = Paths.get(indexingSettings.getSegmentDirectory());
+        this.writer = enabled ? Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "segment-writer");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Читает файл сайта, если он есть и его отметка совпадает с текущей; иначе возвращает false.
+     */
+    public boolean read(int siteId, SegmentStamp currentStamp, SegmentHandler handler) {
+        Path file = segmentFile(siteId);
+        if (!Files.exists(file)) {
+            return false;
+        }
+        synchronized (segmentsOnDisk) {
+            segmentsOnDisk.add(siteId);
+        }
+        try {
+            if (!currentStamp.equals(PostingSegment.readStamp(file))) {
+                log.info("Posting segment of site {} is stale", siteId);
+                return false;
+            }
+            PostingSegment.read(file, handler);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not read posting segment {}: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    public void writeAsync(int siteId, SegmentStamp stamp, Map<String, Postings> lemmas) {
+        if (pendingWrites.put(siteId, new PendingWrite(stamp, lemmas, version(siteId).get())) == null) {
+            writer.execute(() -> write(siteId));
+        }
+    }
+
+    /**
+     * Страницы сайта в памяти изменились: его файл удаляется, а ожидающая или идущая запись
+     * более раннего снимка не попадёт на диск.
+     */
+    public void invalidate(int siteId) {
+        if (!enabled) {
+            return;
+        }
+        version(siteId).incrementAndGet();
+        synchronized (segmentsOnDisk) {
+            if (segmentsOnDisk.remove(siteId)) {
+                deleteFile(siteId);
+            }
+        }
+    }
+
+    public void delete(int siteId) {
+        if (!enabled) {
+            return;
+        }
+        pendingWrites.remove(siteId);
+        version(siteId).incrementAndGet();
+        synchronized (segmentsOnDisk) {
+            segmentsOnDisk.remove(siteId);
+            deleteFile(siteId);
+        }
+    }
+
+    private void deleteFile(int siteId) {
+        try {
+            Files.deleteIfExists(segmentFile(siteId));
+        } catch (IOException e) {
+            log.error("Could not delete posting segment of site {}: {}", siteId, e.getMessage());
+        }
+    }
+
+    private AtomicLong version(int siteId) {
+        return versions.computeIfAbsent(siteId, id -> new AtomicLong());
+    }
+
+    private void write(int siteId) {
+        PendingWrite pendingWrite = pendingWrites.remove(siteId);
+        if (pendingWrite == null) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        Path file = segmentFile(siteId);
+        Path temporaryFile = directory.resolve(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(directory);
+            long size = PostingSegment.write(temporaryFile, siteId, pendingWrite.stamp(), pendingWrite.lemmas());
+            synchronized (segmentsOnDisk) {
+                if (version(siteId).get() != pendingWrite.version()) {
+                    Files.deleteIfExists(temporaryFile);
+                    log.info("Discarded posting segment of site {}: pages changed while it was written", siteId);
+                    return;
+                }
+                Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                segmentsOnDisk.add(siteId);
+            }
+            log.info("Wrote posting segment of site {}: {} lemmas, {} bytes in {} ms", siteId,
+                    pendingWrite.lemmas().size(), size, System.currentTimeMillis() - startTime);
+        } catch (IOException e) {
+            log.error("Could not write posting segment {}: {}", file, e.getMessage());
+        }
+    }
+
+    private Path segmentFile(int siteId) {
+        return directory.resolve("site-" + siteId + ".seg");
+    }
+
+    private record PendingWrite(SegmentStamp stamp, Map<String, Postings> lemmas, long version) {
+    }
+}
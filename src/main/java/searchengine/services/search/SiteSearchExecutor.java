@@ -0,0 +1,73 @@
+package searchengine.services.search;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Ограниченный пул для поиска по нескольким сайтам одновременно: задача каждого сайта выполняется
+ * в своём потоке, и общее время определяется самым медленным сайтом, а не суммой.
+ */
+@Component
+public class SiteSearchExecutor {
+    private final ExecutorService executor;
+
+    public SiteSearchExecutor(SearchSettings searchSettings) {
+        int threads = searchSettings.getSiteSearchThreads();
+        this.executor = threads <= 0 ? null : Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "site-search-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Выполняет поиск по каждому сайту и возвращает результаты в порядке siteIds.
+     */
+    public <T> List<T> searchAll(List<Integer> siteIds, IntFunction<T> siteSearch) {
+        List<T> results = new ArrayList<>(siteIds.size());
+        if (executor == null || siteIds.size() == 1) {
+            for (int siteId : siteIds) {
+                results.add(siteSearch.apply(siteId));
+            }
+            return results;
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(siteIds.size());
+        for (int siteId : siteIds) {
+            futures.add(CompletableFuture.supplyAsync(() -> siteSearch.apply(siteId), executor));
+        }
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,76 @@
+package searchengine.services.search;
+
+import searchengine.services.search.SearchHits.ScoredPage;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Отбор k лучших страниц без сортировки всех найденных: в куче хранится не больше k страниц,
+ * а общее число найденных и максимальный rank считаются за тот же проход.
+ */
+public class TopKCollector {
+    private static final Comparator<ScoredPage> WORST_FIRST = ScoredPage.BEST_FIRST.reversed();
+    private static final int MAX_INITIAL_CAPACITY = 1024;
+
+    private final int k;
+    private final PriorityQueue<ScoredPage> heap;
+    private int total;
+    private float maxRank;
+
+    public TopKCollector(int k) {
+        this.k = Math.max(0, k);
+        this.heap = new PriorityQueue<>(Math.min(this.k, MAX_INITIAL_CAPACITY) + 1, WORST_FIRST);
+    }
+
+    public void collect(Map<Integer, Float> pageToRank) {
+        for (Map.Entry<Integer, Float> entry : pageToRank.entrySet()) {
+            collect(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public void collect(int pageId, float rank) {
+        total++;
+        if (rank > maxRank) {
+            maxRank = rank;
+        }
+        if (heap.size() < k) {
+            heap.add(new ScoredPage(pageId, rank));
+            return;
+        }
+        ScoredPage worst = heap.peek();
+        if (worst != null && (rank > worst.rank() || (rank == worst.rank() && pageId < worst.pageId()))) {
+            heap.poll();
+            heap.add(new ScoredPage(pageId, rank));
+        }
+    }
+
+    public int k() {
+        return k;
+    }
+
+    /**
+     * Оценка k-й лучшей страницы: страница с меньшей оценкой в лучшие k уже не попадёт, с равной — только
+     * при меньшем id. Пока куча не заполнена — минус бесконечность.
+     */
+    public float threshold() {
+        ScoredPage worst = heap.size() < k ? null : heap.peek();
+        return worst == null ? Float.NEGATIVE_INFINITY : worst.rank();
+    }
+
+    /**
+     * Учитывает найденную страницу, заведомо не входящую в лучшие k.
+     */
+    public void countHit() {
+        total++;
+    }
+
+    public SearchHits result() {
+        ScoredPage[] top = heap.toArray(new ScoredPage[0]);
+        Arrays.sort(top, ScoredPage.BEST_FIRST);
+        return new SearchHits(List.of(top), total, maxRank);
+    }
+}
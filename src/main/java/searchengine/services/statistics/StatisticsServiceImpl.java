@@ -3,17 +3,20 @@ package searchengine.services.statistics;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import searchengine.dto.statistics.DetailedStatisticsItem;
+import searchengine.dto.statistics.SiteCount;
+import searchengine.dto.statistics.SiteSummary;
 import searchengine.dto.statistics.StatisticsData;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.dto.statistics.TotalStatistics;
-import searchengine.model.SiteEntity;
 import searchengine.repository.LemmaRepository;
 import searchengine.repository.PageRepository;
 import searchengine.repository.SiteRepository;
 
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
@@ -22,46 +25,52 @@ public class StatisticsServiceImpl implements StatisticsService {
     private final PageRepository pageRepository;
     private final LemmaRepository lemmaRepository;
 
-    private TotalStatistics getTotalStatistics() {
+    /**
+     * Статистика строится по проекции SiteSummary и двум запросам COUNT ... GROUP BY site_id,
+     * поэтому число запросов не зависит от числа сайтов, а сущности сайтов не загружаются.
+     */
+    private StatisticsData buildStatistics() {
+        List<SiteSummary> sites = siteRepository.findSummaries();
+        Map<Integer, Long> pages = toMap(pageRepository.countPerSite());
+        Map<Integer, Long> lemmas = toMap(lemmaRepository.countPerSite());
+
         TotalStatistics total = new TotalStatistics();
-        total.setSites((int) siteRepository.count());
-        total.setPages((int) pageRepository.count());
-        total.setLemmas((int) lemmaRepository.count());
+        total.setSites(sites.size());
         total.setIndexing(true);
-        return total;
-    }
-
-    private List<DetailedStatisticsItem> getDetailedStatisticsItemsList() {
         List<DetailedStatisticsItem> detailed = new ArrayList<>();
-        List<SiteEntity> sites = siteRepository.findAll();
-        for (SiteEntity site : sites) {
+        for (SiteSummary site : sites) {
             DetailedStatisticsItem item = new DetailedStatisticsItem();
-            item.setName(site.getName());
-            item.setUrl(site.getUrl());
-            int countPages = pageRepository.countBySites_id(site.getId());
+            item.setName(site.name());
+            item.setUrl(site.url());
+            int countPages = pages.getOrDefault(site.id(), 0L).intValue();
             item.setPages(countPages);
-            int countLemmas = lemmaRepository.countBySites_Id(site.getId());
+            int countLemmas = lemmas.getOrDefault(site.id(), 0L).intValue();
             item.setLemmas(countLemmas);
-            item.setStatus(String.valueOf(site.getStatus()));
-            item.setError(site.getLastError());
-            item.setStatusTime(site.getStatusTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
-            TotalStatistics total = getTotalStatistics();
+            item.setStatus(String.valueOf(site.status()));
+            item.setError(site.lastError());
+            item.setStatusTime(site.statusTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
             total.setPages(total.getPages() + countPages);
             total.setLemmas(total.getLemmas() + countLemmas);
             detailed.add(item);
         }
-        return detailed;
+        StatisticsData data = new StatisticsData();
+        data.setTotal(total);
+        data.setDetailed(detailed);
+        return data;
+    }
+
+    private static Map<Integer, Long> toMap(List<SiteCount> counts) {
+        Map<Integer, Long> map = new HashMap<>();
+        for (SiteCount count : counts) {
+            map.put(count.siteId(), count.count());
+        }
+        return map;
     }
 
     @Override
     public StatisticsResponse getStatistics() {
-        TotalStatistics total = getTotalStatistics();
-        List<DetailedStatisticsItem> detailed = getDetailedStatisticsItemsList();
         StatisticsResponse response = new StatisticsResponse();
-        StatisticsData data = new StatisticsData();
-        data.setTotal(total);
-        data.setDetailed(detailed);
-        response.setStatistics(data);
+        response.setStatistics(buildStatistics());
         response.setResult(true);
         return response;
     }
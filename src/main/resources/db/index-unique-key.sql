@@ -0,0 +1,6 @@
+-- Уникальный ключ index(page_id, lemma_id) для пакетной записи строк index.
+-- Из повторов остаётся строка с наименьшим id.
+
+DELETE i FROM `index` i JOIN `index` j ON j.page_id = i.page_id AND j.lemma_id = i.lemma_id AND j.id < i.id;
+
+ALTER TABLE `index` ADD UNIQUE KEY page_lemma (page_id, lemma_id);
@@ -0,0 +1,31 @@
+-- Уникальный ключ lemma(site_id, lemma) для пакетных INSERT ... ON DUPLICATE KEY UPDATE.
+-- Повторы лемм сливаются в строку с наименьшим id: её строки index получают ссылки повторов,
+-- совпавшие после этого строки index удаляются, frequency пересчитывается по числу страниц.
+
+CREATE TEMPORARY TABLE lemma_duplicate (
+    duplicate_id INT NOT NULL PRIMARY KEY,
+    keep_id INT NOT NULL,
+    KEY (keep_id)
+);
+
+INSERT INTO lemma_duplicate (duplicate_id, keep_id)
+SELECT l.id, k.keep_id
+FROM lemma l
+JOIN (SELECT site_id, lemma, MIN(id) AS keep_id FROM lemma GROUP BY site_id, lemma HAVING COUNT(*) > 1) k
+    ON k.site_id = l.site_id AND k.lemma = l.lemma AND l.id <> k.keep_id;
+
+UPDATE `index` i JOIN lemma_duplicate d ON d.duplicate_id = i.lemma_id SET i.lemma_id = d.keep_id;
+
+DELETE i FROM `index` i JOIN `index` j ON j.page_id = i.page_id AND j.lemma_id = i.lemma_id AND j.id < i.id;
+
+DELETE l FROM lemma l JOIN lemma_duplicate d ON d.duplicate_id = l.id;
+
+UPDATE lemma l
+JOIN (SELECT i.lemma_id, COUNT(*) AS pages
+      FROM `index` i JOIN (SELECT DISTINCT keep_id FROM lemma_duplicate) k ON k.keep_id = i.lemma_id
+      GROUP BY i.lemma_id) c ON c.lemma_id = l.id
+SET l.frequency = c.pages;
+
+DROP TEMPORARY TABLE lemma_duplicate;
+
+ALTER TABLE lemma ADD UNIQUE KEY site_lemma (site_id, lemma);
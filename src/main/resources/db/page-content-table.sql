@@ -0,0 +1,11 @@
+-- Таблица сжатых тел страниц (PageContentEntity) для базы, созданной до хранения HTML по хешу.
+-- Ссылка page.content_id добавляется отдельно, старые страницы сохраняют HTML в page.content.
+
+CREATE TABLE IF NOT EXISTS page_content (
+    id INT NOT NULL AUTO_INCREMENT,
+    hash BINARY(32) NOT NULL,
+    raw_length INT NOT NULL,
+    data MEDIUMBLOB NOT NULL,
+    PRIMARY KEY (id),
+    UNIQUE KEY content_hash (hash)
+);
@@ -0,0 +1,39 @@
+package searchengine.services.helper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import searchengine.config.IndexingSettings;
+import searchengine.model.SiteEntity;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class CrawlPipelineTest {
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final IndexingSettings settings = new IndexingSettings();
+
+    @Test
+    void queueGaugesAreRemovedWhenPipelineFinishes() {
+        CrawlPipeline first = createPipeline();
+        assertThat(meterRegistry.find("crawler.queue.size").tag("site", "Example").gauges()).hasSize(4);
+
+        first.stop();
+        assertThat(meterRegistry.find("crawler.queue.size").gauges()).isEmpty();
+
+        CrawlPipeline second = createPipeline();
+        assertThat(meterRegistry.get("crawler.queue.size").tag("stage", "fetch").gauge().value()).isZero();
+        second.stop();
+    }
+
+    private CrawlPipeline createPipeline() {
+        SiteEntity site = new SiteEntity();
+        site.setId(1);
+        site.setName("Example");
+        site.setUrl("https://example.org");
+        return new CrawlPipeline(site, VisitedUrlSet.create(settings), new AtomicBoolean(),
+                mock(EntityFactory.class), mock(ConnectToPage.class), mock(Lemmatizer.class), settings, meterRegistry);
+    }
+}
@@ -0,0 +1,52 @@
+package searchengine.services.helper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import searchengine.config.IndexingSettings;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Подсчёт лемм сохранённой страницы: однопроходный {@link Lemmatizer#getLemmaCounts} против прежнего
+ * разбора регулярными выражениями ({@link RegexLemmaCounter}). Морфология в обоих случаях берётся из
+ * прогретого кэша словоформ, поэтому измеряется разбор текста и подсчёт.
+ * <p>
+ * Запуск: {@code mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ * "-Dexec.args=-cp %classpath searchengine.services.helper.LemmatizerBenchmark"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LemmatizerBenchmark {
+    private Lemmatizer lemmatizer;
+    private String page;
+
+    @Setup
+    public void setUp() throws IOException {
+        lemmatizer = new Lemmatizer(new RussianLuceneMorphology(), new IndexingSettings(), new SimpleMeterRegistry());
+        page = RegexLemmaCounter.loadPage("lemmatizer/page.html");
+    }
+
+    @Benchmark
+    public HashMap<String, Integer> singlePassTokenizer() {
+        return lemmatizer.getLemmaCounts(page);
+    }
+
+    @Benchmark
+    public HashMap<String, Integer> regexTokenization() {
+        return RegexLemmaCounter.getLemmaCounts(lemmatizer, page);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LemmatizerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
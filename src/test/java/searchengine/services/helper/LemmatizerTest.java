@@ -0,0 +1,47 @@
+package searchengine.services.helper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import searchengine.config.IndexingSettings;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LemmatizerTest {
+    private static Lemmatizer lemmatizer;
+
+    @BeforeAll
+    static void createLemmatizer() throws IOException {
+        lemmatizer = new Lemmatizer(new RussianLuceneMorphology(), new IndexingSettings(), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void countsLemmasOfPageLikeRegexTokenization() {
+        String page = RegexLemmaCounter.loadPage("lemmatizer/page.html");
+
+        assertThat(lemmatizer.getLemmaCounts(page))
+                .isNotEmpty()
+                .isEqualTo(RegexLemmaCounter.getLemmaCounts(lemmatizer, page));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "   ",
+            "Мама мыла раму, а папа читал газету.",
+            "ВЕРХНИЙ регистр и Смешанный РеГиСтР",
+            "ёлка, Ёж и еж",
+            "научно-исследовательский северо-западный",
+            "Wi-Fiсеть ПКr2d2 abcдом дом123кот",
+            "<p class=\"текст\">Тег <b>жирный</b></p><!-- комментарий -->",
+            "табуляция\tперевод\nстроки\r\nи неразрывный\u00a0пробел"
+    })
+    void countsLemmasLikeRegexTokenization(String text) {
+        assertThat(lemmatizer.getLemmaCounts(text)).isEqualTo(RegexLemmaCounter.getLemmaCounts(lemmatizer, text));
+    }
+}
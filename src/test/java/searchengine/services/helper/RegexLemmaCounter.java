@@ -0,0 +1,45 @@
+package searchengine.services.helper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Подсчёт лемм так, как его делал Lemmatizer.getLemmaCounts до однопроходного {@link RussianWordTokenizer}:
+ * нормализация регулярным выражением, удаление тегов, split по пробелам и проверка каждого слова.
+ * Нужен тестам и бенчмарку как эталон.
+ */
+final class RegexLemmaCounter {
+
+    private RegexLemmaCounter() {
+    }
+
+    static HashMap<String, Integer> getLemmaCounts(Lemmatizer lemmatizer, String text) {
+        text = lemmatizer.normalizeText(text);
+        text = lemmatizer.stripHtmlTags(text);
+        HashMap<String, Integer> lemmaCounts = new HashMap<>();
+        String[] words = text.toLowerCase(Locale.ROOT).split("\\s+");
+        for (String word : words) {
+            List<String> lemmas = word.matches("[а-яА-Я]+") ? lemmatizer.getLemmaList(word) : List.of();
+            for (String lemma : lemmas) {
+                lemmaCounts.put(lemma, lemmaCounts.getOrDefault(lemma, 0) + 1);
+            }
+        }
+        return lemmaCounts;
+    }
+
+    static String loadPage(String resource) {
+        try (InputStream in = RegexLemmaCounter.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Resource not found: " + resource);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
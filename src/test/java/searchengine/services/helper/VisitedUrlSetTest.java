@@ -0,0 +1,70 @@
+package searchengine.services.helper;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import searchengine.config.IndexingSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VisitedUrlSetTest {
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 2_000;
+    private static final int PATHS_PER_ROUND = 4;
+    private static final int PATHS = ROUNDS * PATHS_PER_ROUND;
+
+    /**
+     * Потоки захватывают одни и те же пути раундами по несколько путей и начинают каждый раунд
+     * одновременно, чтобы чаще сталкиваться на одном пути.
+     */
+    @ParameterizedTest
+    @ValueSource(longs = {0, 1_000_000})
+    void eachPathIsClaimedByOneThread(long bloomFilterSize) throws Exception {
+        IndexingSettings settings = new IndexingSettings();
+        settings.setVisitedBloomFilterSize(bloomFilterSize);
+        VisitedUrlSet visitedUrls = VisitedUrlSet.create(settings);
+        AtomicIntegerArray claims = new AtomicIntegerArray(PATHS);
+        CyclicBarrier round = new CyclicBarrier(THREADS);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int r = 0; r < ROUNDS; r++) {
+                        round.await();
+                        for (int i = r * PATHS_PER_ROUND; i < (r + 1) * PATHS_PER_ROUND; i++) {
+                            if (visitedUrls.claim("/page/" + i)) {
+                                claims.incrementAndGet(i);
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int claimed = 0;
+        for (int i = 0; i < PATHS; i++) {
+            assertThat(claims.get(i)).as("/page/" + i).isLessThanOrEqualTo(1);
+            claimed += claims.get(i);
+        }
+        assertThat(visitedUrls.size()).isEqualTo(claimed);
+        assertThat(claimed).isGreaterThan(PATHS * 99 / 100);
+        if (bloomFilterSize == 0) {
+            assertThat(claimed).isEqualTo(PATHS);
+        }
+    }
+}
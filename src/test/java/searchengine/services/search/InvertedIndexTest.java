@@ -0,0 +1,207 @@
+package searchengine.services.search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import searchengine.config.IndexingSettings;
+import searchengine.config.SearchSettings;
+import searchengine.repository.IndexBatchRepository;
+import searchengine.services.helper.LemmaPositions;
+import searchengine.services.search.SearchHits.ScoredPage;
+import searchengine.services.search.SearchQuery.Phrase;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Отсечение по верхним границам (MaxScore), прибавка за близость и проверка фраз сравниваются с полным
+ * перебором страниц сайта. Ранги — малые целые числа, поэтому равных оценок много, и у модели rank
+ * совпадать должны не только оценки, но и id страниц: при равной оценке выше страница с меньшим id.
+ */
+class InvertedIndexTest {
+    private static final int SITE_ID = 1;
+    private static final String[] WORDS = {"a", "b", "c", "d", "e", "z"};
+    private static final double[] WORD_WEIGHTS = {0.3, 0.2, 0.1, 0.3, 0.02, 0.08};
+
+    private final Map<Integer, Map<String, LemmaPositions.Builder>> pages = new HashMap<>();
+    private final List<Integer> positionReads = new ArrayList<>();
+    private final InvertedIndex invertedIndex = createIndex();
+
+    @ParameterizedTest
+    @ValueSource(longs = {1, 2, 3, 4, 5, 6, 7, 8})
+    void matchesExhaustiveEvaluation(long seed) {
+        Random random = new Random(seed);
+        int pageCount = 50 + random.nextInt(300);
+        for (int pageId = 1; pageId <= pageCount; pageId++) {
+            addRandomPage(random, pageId);
+        }
+        ScoringModel[] models = {new RankSumScoring(), new Bm25Scoring(new SearchSettings())};
+        for (int run = 0; run < 200; run++) {
+            SearchQuery query = randomQuery(random);
+            ScoringModel model = models[run % models.length];
+            double commonLemmaShare = run % 3 == 0 ? 0 : 0.8;
+            float proximityWeight = run % 4 == 0 ? 0 : 0.5f;
+            int k = 1 + random.nextInt(20);
+
+            TopKCollector collector = new TopKCollector(k);
+            invertedIndex.collectPages(SITE_ID, query, model, commonLemmaShare, proximityWeight, collector);
+            SearchHits actual = collector.result();
+            SearchHits expected = evaluateAllPages(query, model, commonLemmaShare, proximityWeight, k);
+
+            String description = "seed " + seed + ", run " + run + ", query " + query + ", k " + k;
+            assertThat(actual.total()).as(description).isEqualTo(expected.total());
+            assertThat(actual.top()).as(description).hasSameSizeAs(expected.top());
+            if (model instanceof RankSumScoring) {
+                assertThat(actual.top()).as(description).isEqualTo(expected.top());
+            } else {
+                for (int i = 0; i < expected.top().size(); i++) {
+                    assertThat(actual.top().get(i).rank()).as(description)
+                            .isCloseTo(expected.top().get(i).rank(), within(1e-4f));
+                }
+            }
+        }
+    }
+
+    @Test
+    void proximityReadsPositionsOnlyOfPagesThatCanEnterTopK() {
+        for (int pageId = 1; pageId <= 2000; pageId++) {
+            addPage(pageId, pageId % 100 == 0 ? List.of("a", "b", "a", "b") : List.of("a", "z", "z", "b"));
+        }
+        SearchQuery query = new SearchQuery(new LinkedHashSet<>(List.of("a", "b")), List.of());
+
+        TopKCollector collector = new TopKCollector(10);
+        invertedIndex.collectPages(SITE_ID, query, new RankSumScoring(), 0, 0.5f, collector);
+
+        SearchHits hits = collector.result();
+        assertThat(hits.total()).isEqualTo(2000);
+        assertThat(hits.top()).extracting(ScoredPage::pageId)
+                .containsExactly(100, 200, 300, 400, 500, 600, 700, 800, 900, 1000);
+        assertThat(positionReads).hasSizeLessThan(100);
+    }
+
+    private InvertedIndex createIndex() {
+        IndexBatchRepository indexBatchRepository = mock(IndexBatchRepository.class);
+        when(indexBatchRepository.findPositions(anyInt(), any(), any())).thenAnswer(invocation -> {
+            Collection<String> lemmas = invocation.getArgument(1);
+            List<Integer> pageIds = invocation.getArgument(2);
+            positionReads.addAll(pageIds);
+            Map<Integer, Map<String, byte[]>> positions = new HashMap<>();
+            for (int pageId : pageIds) {
+                Map<String, byte[]> pagePositions = pagePositions(pageId, lemmas);
+                if (!pagePositions.isEmpty()) {
+                    positions.put(pageId, pagePositions);
+                }
+            }
+            return positions;
+        });
+        return new InvertedIndex(indexBatchRepository, null, new SegmentStore(new IndexingSettings()));
+    }
+
+    private void addRandomPage(Random random, int pageId) {
+        int length = 3 + random.nextInt(25);
+        List<String> words = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            double point = random.nextDouble();
+            int word = 0;
+            while (word < WORDS.length - 1 && (point -= WORD_WEIGHTS[word]) > 0) {
+                word++;
+            }
+            words.add(WORDS[word]);
+        }
+        addPage(pageId, words);
+    }
+
+    private void addPage(int pageId, List<String> words) {
+        Map<String, LemmaPositions.Builder> positions = new HashMap<>();
+        for (int ordinal = 0; ordinal < words.size(); ordinal++) {
+            positions.computeIfAbsent(words.get(ordinal), word -> new LemmaPositions.Builder())
+                    .add(ordinal, ordinal * 2);
+        }
+        pages.put(pageId, positions);
+        Map<String, Integer> lemmaCounts = new HashMap<>();
+        positions.forEach((lemma, builder) -> lemmaCounts.put(lemma, builder.count()));
+        invertedIndex.addPage(SITE_ID, pageId, lemmaCounts);
+    }
+
+    private Map<String, byte[]> pagePositions(int pageId, Collection<String> lemmas) {
+        Map<String, byte[]> pagePositions = new HashMap<>();
+        for (String lemma : lemmas) {
+            LemmaPositions.Builder builder = pages.get(pageId).get(lemma);
+            if (builder != null) {
+                pagePositions.put(lemma, builder.encode());
+            }
+        }
+        return pagePositions;
+    }
+
+    private SearchQuery randomQuery(Random random) {
+        Set<String> lemmas = new LinkedHashSet<>();
+        for (String word : WORDS) {
+            if (random.nextInt(3) == 0) {
+                lemmas.add(word);
+            }
+        }
+        List<Phrase> phrases = new ArrayList<>();
+        if (random.nextInt(3) == 0) {
+            String first = WORDS[random.nextInt(4)];
+            String second = WORDS[random.nextInt(4)];
+            phrases.add(new Phrase(List.of(Set.of(first), Set.of(), Set.of(second))));
+            lemmas.add(first);
+            lemmas.add(second);
+        }
+        if (lemmas.isEmpty()) {
+            lemmas.add(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return new SearchQuery(lemmas, phrases);
+    }
+
+    /**
+     * Оценка каждой страницы сайта без отсечения, с тем же делением лемм на обязательные и необязательные.
+     */
+    private SearchHits evaluateAllPages(SearchQuery query, ScoringModel model, double commonLemmaShare,
+                                        float proximityWeight, int k) {
+        TopKCollector collector = new TopKCollector(k);
+        if (query.lemmas().stream().anyMatch(lemma -> invertedIndex.frequency(SITE_ID, lemma) == 0)) {
+            return collector.result();
+        }
+        ScoringModel.SiteStatistics siteStatistics = invertedIndex.statistics(SITE_ID);
+        List<String> lemmas = new ArrayList<>(query.lemmas());
+        lemmas.sort(Comparator.comparingInt(lemma -> invertedIndex.frequency(SITE_ID, lemma)));
+        double commonFrequency = commonLemmaShare > 0 && commonLemmaShare < 1
+                ? commonLemmaShare * siteStatistics.pageCount() : Double.MAX_VALUE;
+        List<String> required = new ArrayList<>();
+        for (String lemma : lemmas) {
+            if (required.isEmpty() || invertedIndex.frequency(SITE_ID, lemma) <= commonFrequency
+                    || query.phraseLemmas().contains(lemma)) {
+                required.add(lemma);
+            }
+        }
+        for (int pageId : new TreeSet<>(pages.keySet())) {
+            Map<String, byte[]> pagePositions = pagePositions(pageId, query.lemmas());
+            if (!pagePositions.keySet().containsAll(required)
+                    || !PositionalMatcher.matchesPhrases(query.phrases(), pagePositions)) {
+                continue;
+            }
+            int pageLength = invertedIndex.pageLength(pageId);
+            float rank = 0;
+            for (String lemma : lemmas) {
+                LemmaPositions.Builder builder = pages.get(pageId).get(lemma);
+                if (builder != null) {
+                    rank += model.forLemma(siteStatistics, invertedIndex.frequency(SITE_ID, lemma))
+                            .score(builder.count(), pageLength);
+                }
+            }
+            if (proximityWeight > 0 && query.lemmas().size() > 1) {
+                byte[][] termPositions = pagePositions.values().toArray(new byte[0][]);
+                rank *= 1 + proximityWeight * PositionalMatcher.proximity(termPositions, termPositions.length);
+            }
+            collector.collect(pageId, rank);
+        }
+        return collector.result();
+    }
+}
@@ -0,0 +1,50 @@
+package searchengine.services.search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import searchengine.services.search.PostingList.Postings;
+import searchengine.services.search.PostingSegment.SegmentStamp;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Сайт, загруженный из файла, должен получить те же rank, что и загруженный из таблицы index.
+ */
+class PostingSegmentTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void ranksAreReadBackExactly() throws IOException {
+        float[] ranks = {1, 7, 300, 21_474_837, 16_777_216};
+        Postings written = new Postings(new int[]{3, 4, 1_000, 70_000, 70_001}, ranks, ranks.length, 21_474_837);
+        Path file = directory.resolve("site-1.seg");
+        SegmentStamp stamp = new SegmentStamp(5, 70_001);
+
+        PostingSegment.write(file, 1, stamp, Map.of("физика", written));
+        Map<String, Postings> read = new HashMap<>();
+        int lemmaCount = PostingSegment.read(file, read::put);
+
+        assertThat(lemmaCount).isEqualTo(1);
+        assertThat(PostingSegment.readStamp(file)).isEqualTo(stamp);
+        Postings postings = read.get("физика");
+        assertThat(postings.pageIds()).containsExactly(written.pageIds());
+        assertThat(postings.ranks()).containsExactly(ranks);
+        assertThat(postings.maxRank()).isEqualTo(written.maxRank());
+    }
+
+    @Test
+    void fractionalRankIsNotWritten() {
+        Postings postings = new Postings(new int[]{1}, new float[]{2.5f}, 1, 2.5f);
+
+        assertThatThrownBy(() -> PostingSegment.write(directory.resolve("site-1.seg"), 1, new SegmentStamp(1, 1),
+                Map.of("физика", postings)))
+                .isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,104 @@
+package searchengine.services.search;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import searchengine.config.IndexingSettings;
+import searchengine.config.SearchSettings;
+import searchengine.dto.search.PageView;
+import searchengine.dto.search.SearchData;
+import searchengine.dto.search.SearchResponse;
+import searchengine.repository.IndexBatchRepository;
+import searchengine.repository.PageRepository;
+import searchengine.repository.SiteRepository;
+import searchengine.services.helper.Lemmatizer;
+import searchengine.services.helper.PageContentStore;
+import searchengine.services.search.SearchHits.ScoredPage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class SearchServiceImplTest {
+    private static final int SITE_ID = 1;
+    private static final String SITE_URL = "https://example.org";
+    private static final int PAGES = 30;
+
+    private final PageRepository pageRepository = mock(PageRepository.class);
+    private final SearchResultRenderer searchResultRenderer = mock(SearchResultRenderer.class);
+    private SearchResultCache searchResultCache;
+    private SearchServiceImpl searchService;
+
+    @BeforeEach
+    void createService() {
+        SiteRepository siteRepository = mock(SiteRepository.class);
+        when(siteRepository.findIdByUrl(SITE_URL)).thenReturn(SITE_ID);
+        when(siteRepository.findAllIds()).thenReturn(List.of(SITE_ID));
+        IndexBatchRepository indexBatchRepository = mock(IndexBatchRepository.class);
+        when(indexBatchRepository.findPositions(anyInt(), any(), any())).thenReturn(Map.of());
+        InvertedIndex invertedIndex = new InvertedIndex(indexBatchRepository, siteRepository,
+                new SegmentStore(new IndexingSettings()));
+        for (int pageId = 1; pageId <= PAGES; pageId++) {
+            invertedIndex.addPage(SITE_ID, pageId, Map.of("физика", pageId));
+        }
+
+        when(pageRepository.findViewsByIdIn(any())).thenAnswer(invocation -> {
+            Collection<Integer> ids = invocation.getArgument(0);
+            return ids.stream().map(id -> new PageView(id, "/" + id, "title", null, "физика",
+                    SITE_ID, SITE_URL, "Example")).toList();
+        });
+        when(searchResultRenderer.render(any(), any(), any(), any(), any(), anyInt())).thenAnswer(invocation -> {
+            List<ScoredPage> window = invocation.getArgument(1);
+            return window.stream().map(page -> new SearchData(SITE_URL, "Example", "/" + page.pageId(),
+                    "title", "", page.rank())).toList();
+        });
+        Lemmatizer lemmatizer = mock(Lemmatizer.class);
+        when(lemmatizer.getLemmaList(anyString())).thenAnswer(invocation -> List.of(invocation.<String>getArgument(0)));
+
+        SearchSettings searchSettings = new SearchSettings();
+        searchSettings.setRanking("rank");
+        searchSettings.setSiteSearchThreads(0);
+        searchResultCache = new SearchResultCache(searchSettings, new SimpleMeterRegistry());
+        searchService = new SearchServiceImpl(siteRepository, pageRepository, invertedIndex, searchResultCache,
+                lemmatizer, mock(PageContentStore.class), searchResultRenderer,
+                new SiteSearchExecutor(searchSettings), List.of(new RankSumScoring()), searchSettings);
+    }
+
+    @Test
+    void cacheMissAndCacheHitReturnLimitPages() {
+        SearchResponse miss = search(5, 10);
+        SearchResponse hit = search(5, 10);
+
+        assertThat(searchResultCache.hitRatio()).isEqualTo(0.5);
+        assertThat(miss.getCount()).isEqualTo(PAGES);
+        assertThat(miss.getData()).hasSize(10);
+        assertThat(hit.getData()).hasSize(10)
+                .extracting(SearchData::getUri)
+                .isEqualTo(miss.getData().stream().map(SearchData::getUri).toList());
+        assertThat(hit.getData().get(0).getUri()).isEqualTo("/" + (PAGES - 5));
+        assertThat(loadedPageViews()).allSatisfy(ids -> assertThat(ids).hasSize(10));
+    }
+
+    @Test
+    void lastPageIsCutAtTotal() {
+        assertThat(search(25, 10).getData()).hasSize(5);
+        assertThat(search(40, 10).getData()).isEmpty();
+    }
+
+    private SearchResponse search(int offset, int limit) {
+        return (SearchResponse) searchService.searchByQueryAndUrlWithPagination("физика", SITE_URL, offset, limit, "")
+                .getBody();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Collection<Integer>> loadedPageViews() {
+        ArgumentCaptor<Collection<Integer>> ids = ArgumentCaptor.forClass(Collection.class);
+        verify(pageRepository, atLeastOnce()).findViewsByIdIn(ids.capture());
+        return ids.getAllValues();
+    }
+}
@@ -0,0 +1,115 @@
+package searchengine.services.statistics;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import searchengine.dto.statistics.DetailedStatisticsItem;
+import searchengine.dto.statistics.StatisticsResponse;
+import searchengine.model.IndexationStatuses;
+import searchengine.model.LemmaEntity;
+import searchengine.model.PageEntity;
+import searchengine.model.SiteEntity;
+import searchengine.repository.LemmaRepository;
+import searchengine.repository.PageRepository;
+import searchengine.repository.SiteRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Статистика и выбор сайтов для поиска не должны загружать сущности страниц и лемм: сайт читается
+ * без своих коллекций, а страницы и леммы считаются запросами COUNT ... GROUP BY site_id.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:statistics;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class StatisticsServiceImplTest {
+    private static final String SITE_URL = "https://example.org";
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private SiteRepository siteRepository;
+    @Autowired
+    private PageRepository pageRepository;
+    @Autowired
+    private LemmaRepository lemmaRepository;
+
+    private Statistics statistics;
+    private int siteId;
+
+    @BeforeEach
+    void createSite() {
+        SiteEntity site = new SiteEntity();
+        site.setUrl(SITE_URL);
+        site.setName("Example");
+        site.setStatus(IndexationStatuses.INDEXED);
+        site.setStatusTime(LocalDateTime.now());
+        siteId = entityManager.persistAndGetId(site, Integer.class);
+        for (String path : List.of("/", "/news", "/missing")) {
+            PageEntity page = new PageEntity();
+            page.setSites(site);
+            page.setPath(path);
+            page.setCode(path.equals("/missing") ? 404 : 200);
+            entityManager.persist(page);
+        }
+        for (String word : List.of("физика", "плазма", "контакт")) {
+            LemmaEntity lemma = new LemmaEntity();
+            lemma.setSites(site);
+            lemma.setLemma(word);
+            lemma.setFrequency(1);
+            entityManager.persist(lemma);
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void statisticsCountRowsWithoutLoadingPagesOrLemmas() {
+        StatisticsResponse response = new StatisticsServiceImpl(siteRepository, pageRepository, lemmaRepository)
+                .getStatistics();
+
+        DetailedStatisticsItem item = response.getStatistics().getDetailed().get(0);
+        assertThat(item.getUrl()).isEqualTo(SITE_URL);
+        assertThat(item.getPages()).isEqualTo(3);
+        assertThat(item.getLemmas()).isEqualTo(3);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+        assertNoPagesOrLemmasLoaded();
+    }
+
+    @Test
+    void searchScopeDoesNotLoadPagesOrLemmas() {
+        assertThat(siteRepository.findIdByUrl(SITE_URL)).isEqualTo(siteId);
+        assertThat(siteRepository.findAllIds()).containsExactly(siteId);
+        assertThat(siteRepository.findById(siteId)).isPresent();
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+        assertNoPagesOrLemmasLoaded();
+    }
+
+    private void assertNoPagesOrLemmasLoaded() {
+        assertThat(statistics.getEntityStatistics(PageEntity.class.getName()).getLoadCount()).isZero();
+        assertThat(statistics.getEntityStatistics(LemmaEntity.class.getName()).getLoadCount()).isZero();
+        assertThat(statistics.getCollectionFetchCount()).isZero();
+        assertThat(statistics.getCollectionLoadCount()).isZero();
+    }
+}